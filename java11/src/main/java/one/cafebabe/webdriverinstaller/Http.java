@@ -0,0 +1,382 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URLConnection;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * minimal HTTP GET helper shared by listing fetches and archive downloads.
+ * This is the Java 11+ variant, packaged in META-INF/versions/11. Requests share one HttpClient, so connections are kept alive and reused, over HTTP/2 where available.
+ */
+final class Http {
+    /**
+     * environment variable to specify connect timeout in milliseconds
+     */
+    static final String CONNECT_TIMEOUT_ENV_NAME = "WEBDRIVER_INSTALLER_CONNECT_TIMEOUT";
+    /**
+     * system property to specify connect timeout in milliseconds
+     */
+    static final String CONNECT_TIMEOUT_PROPERTY_NAME = "webdriverinstaller.connect.timeout";
+    /**
+     * environment variable to specify read timeout in milliseconds
+     */
+    static final String READ_TIMEOUT_ENV_NAME = "WEBDRIVER_INSTALLER_READ_TIMEOUT";
+    /**
+     * system property to specify read timeout in milliseconds
+     */
+    static final String READ_TIMEOUT_PROPERTY_NAME = "webdriverinstaller.read.timeout";
+
+    private Http() {
+    }
+
+    /**
+     * created on first use, with the connect timeout configured at that time
+     */
+    private static final class ClientHolder {
+        private static final HttpClient CLIENT = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(connectTimeout()))
+                .build();
+    }
+
+    private static int connectTimeout() {
+        return (int) WebDriverInstaller.getConfigLong(CONNECT_TIMEOUT_ENV_NAME, CONNECT_TIMEOUT_PROPERTY_NAME, 5000);
+    }
+
+    private static int readTimeout() {
+        return (int) WebDriverInstaller.getConfigLong(READ_TIMEOUT_ENV_NAME, READ_TIMEOUT_PROPERTY_NAME, 30000);
+    }
+
+    /**
+     * Sends a GET request. Non-HTTP urls such as file: are also accepted; they respond 200, or 404 if not found.
+     *
+     * @param url            url to fetch
+     * @param requestHeaders additional request headers
+     * @return response. the caller is responsible for closing it
+     * @throws IOException when failed to connect
+     */
+    @NotNull
+    static Response get(String url, Map<String, String> requestHeaders) throws IOException {
+        return get(url, requestHeaders, false);
+    }
+
+    /**
+     * Sends a GET request for a listing or metadata, accepting a gzip compressed response, which is decoded transparently.
+     * Archives are fetched with {@link #get(String, Map)}, as Content-Length of a compressed response is not the length of the resource, which resuming relies on.
+     *
+     * @param url            url to fetch
+     * @param requestHeaders additional request headers
+     * @return response. the caller is responsible for closing it
+     * @throws IOException when failed to connect
+     */
+    @NotNull
+    static Response getCompressible(String url, Map<String, String> requestHeaders) throws IOException {
+        return get(url, requestHeaders, true);
+    }
+
+    private static Response get(String url, Map<String, String> requestHeaders, boolean compressible) throws IOException {
+        final URI uri = URI.create(url);
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+            return getNonHttp(url, requestHeaders);
+        }
+        final int readTimeout = readTimeout();
+        // bounds the wait for the response headers, body reads are bounded by BodyStream
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(readTimeout))
+                .GET();
+        for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
+            builder.header(entry.getKey(), entry.getValue());
+        }
+        // byte offsets of ranges refer to the unencoded resource
+        final boolean compressed = compressible && !requestHeaders.containsKey("Range");
+        if (compressed) {
+            builder.header("Accept-Encoding", "gzip");
+        }
+        try {
+            final HttpResponse<InputStream> response = ClientHolder.CLIENT.sendAsync(builder.build(), info -> new BodyStream(url, readTimeout)).get();
+            return new Response(response, compressed && response.headers().firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw toNetworkFailure((IOException) e.getCause());
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * HttpClient reports most failures of a connection as plain IOException. They are translated to the java.net exceptions URLConnection throws,
+     * so that RetryPolicy tells them from local failures.
+     */
+    private static IOException toNetworkFailure(IOException e) {
+        if (e instanceof SocketException || e instanceof UnknownHostException || e instanceof InterruptedIOException) {
+            return e;
+        }
+        final IOException translated = e instanceof HttpTimeoutException ? new SocketTimeoutException(e.getMessage()) : new SocketException(e.getMessage());
+        translated.initCause(e);
+        return translated;
+    }
+
+    private static Response getNonHttp(String url, Map<String, String> requestHeaders) throws IOException {
+        final URLConnection con = new URL(url).openConnection();
+        con.setConnectTimeout(connectTimeout());
+        con.setReadTimeout(readTimeout());
+        for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
+            con.setRequestProperty(entry.getKey(), entry.getValue());
+        }
+        try {
+            return new Response(con, con.getInputStream());
+        } catch (FileNotFoundException e) {
+            return new Response(con, null);
+        }
+    }
+
+    /**
+     * response body as an InputStream, like BodyHandlers.ofInputStream(), except that a read fails with SocketTimeoutException
+     * when no data arrives within the read timeout, as URLConnection does. The body is requested one chunk at a time as it is read.
+     */
+    private static final class BodyStream extends InputStream implements HttpResponse.BodySubscriber<InputStream> {
+        private static final Object END = new Object();
+        private final String url;
+        private final int readTimeout;
+        /**
+         * List&lt;ByteBuffer&gt;, Throwable, or END
+         */
+        private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        private volatile Flow.Subscription subscription;
+        private Iterator<ByteBuffer> buffers = Collections.emptyIterator();
+        @Nullable
+        private ByteBuffer buffer;
+        private boolean ended;
+        /**
+         * thrown again on later reads, as FileChannel.transferFrom retries a read which failed after transferring some bytes
+         */
+        @Nullable
+        private IOException failure;
+        private volatile boolean closed;
+
+        private BodyStream(String url, int readTimeout) {
+            this.url = url;
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        public CompletionStage<InputStream> getBody() {
+            // available as soon as the headers are received
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (closed) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            received.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            received.add(END);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (buffer == null || !buffer.hasRemaining()) {
+                if (buffers.hasNext()) {
+                    buffer = buffers.next();
+                    continue;
+                }
+                if (ended) {
+                    return -1;
+                }
+                final Object item;
+                try {
+                    item = received.poll(readTimeout, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading " + url);
+                }
+                if (item == null) {
+                    final Flow.Subscription s = subscription;
+                    if (s != null) {
+                        s.cancel();
+                    } else {
+                        // onSubscribe cancels the subscription when it arrives
+                        closed = true;
+                    }
+                    failure = new SocketTimeoutException("Read timed out after " + readTimeout + " ms: " + url);
+                    throw failure;
+                }
+                if (item == END) {
+                    ended = true;
+                    return -1;
+                }
+                if (item instanceof Throwable) {
+                    ended = true;
+                    failure = item instanceof IOException ? toNetworkFailure((IOException) item) : new IOException((Throwable) item);
+                    throw failure;
+                }
+                @SuppressWarnings("unchecked") final List<ByteBuffer> list = (List<ByteBuffer>) item;
+                buffers = list.iterator();
+                subscription.request(1);
+            }
+            final int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer == null ? 0 : buffer.remaining();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                final Flow.Subscription s = subscription;
+                if (!ended && s != null) {
+                    // releases the connection
+                    s.cancel();
+                }
+            }
+        }
+    }
+
+    static final class Response implements Closeable {
+        private final int code;
+        @Nullable
+        private final HttpResponse<InputStream> response;
+        private final boolean gzipped;
+        @Nullable
+        private final URLConnection con;
+        @Nullable
+        private InputStream body;
+
+        private Response(HttpResponse<InputStream> response, boolean gzipped) {
+            this.code = response.statusCode();
+            this.response = response;
+            this.gzipped = gzipped;
+            this.con = null;
+        }
+
+        private Response(URLConnection con, @Nullable InputStream body) {
+            this.code = body != null ? 200 : 404;
+            this.response = null;
+            this.gzipped = false;
+            this.con = con;
+            this.body = body;
+        }
+
+        int code() {
+            return code;
+        }
+
+        @Nullable
+        String header(String name) {
+            if (response == null) {
+                return con.getHeaderField(name);
+            }
+            if (gzipped && "Content-Length".equalsIgnoreCase(name)) {
+                // length of the encoded body, not of the resource
+                return null;
+            }
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @NotNull
+        InputStream body() throws IOException {
+            if (body == null) {
+                if (response == null) {
+                    throw new FileNotFoundException(con.getURL().toString());
+                }
+                body = gzipped ? new GZIPInputStream(response.body()) : response.body();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body != null) {
+                body.close();
+            } else if (response != null) {
+                // releases the connection, or closes it if the body is left unread
+                response.body().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * extracting driver archives. Each invocation overwrites the previous extraction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DecompressBenchmark {
+    /**
+     * chromedriver_linux64.zip is 5MB and geckodriver-linux64.tar.gz is 2MB, each about a half of the binary
+     */
+    @Param({"zip", "tar.gz"})
+    String format;
+
+    @Param({"10485760"})
+    int binarySize;
+
+    /**
+     * true to extract only the driver binary, as installs do
+     */
+    @Param({"true", "false"})
+    boolean binaryOnly;
+
+    private Path directory;
+    private Path archive;
+    private Path extractTo;
+    private String binName;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("decompress-benchmark");
+        archive = directory.resolve("driver." + format);
+        extractTo = Files.createDirectories(directory.resolve("extracted"));
+        final byte[] binary = Fixtures.binary(binarySize);
+        binName = format.equals("zip") ? "chromedriver" : "geckodriver";
+        if (format.equals("zip")) {
+            Fixtures.zip(archive, binName, binary);
+        } else {
+            Fixtures.tarGz(archive, binName, binary);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        WebDriverInstaller.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Path decompress() throws IOException {
+        WebDriverInstaller.decompress(archive, extractTo, binaryOnly ? binName : null);
+        return extractTo;
+    }
+}
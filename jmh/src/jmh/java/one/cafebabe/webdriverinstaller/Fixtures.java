@@ -0,0 +1,115 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * fixtures generated locally so that benchmarks run offline and reproducibly
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    /**
+     * Generates a listing shaped like the storage bucket: 2.0 - 2.46 followed by four component versions, in lexicographic order.
+     *
+     * @param size approximate number of versions
+     * @return versions
+     */
+    static List<String> versions(int size) {
+        final List<String> versions = new ArrayList<>();
+        for (int minor = 0; minor <= 46; minor++) {
+            versions.add("2." + minor);
+        }
+        final int buildsPerMajor = Math.max(1, (size - versions.size()) / 50);
+        for (int major = 70; major < 120; major++) {
+            for (int build = 0; build < buildsPerMajor; build++) {
+                versions.add(major + ".0." + (major * 50) + "." + build);
+            }
+        }
+        Collections.sort(versions);
+        return versions;
+    }
+
+    /**
+     * @param versions versions
+     * @return bucket listing XML of the versions
+     */
+    static byte[] listing(List<String> versions) {
+        final StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>" +
+                "<ListBucketResult xmlns='http://doc.s3.amazonaws.com/2006-03-01'><Name>chromedriver</Name><Prefix></Prefix><Marker></Marker><Delimiter>/</Delimiter><IsTruncated>false</IsTruncated>" +
+                "<Contents><Key>index.html</Key><Generation>1</Generation><MetaGeneration>2</MetaGeneration><LastModified>2021-01-01T00:00:00.000Z</LastModified><ETag>\"0\"</ETag><Size>10000</Size></Contents>");
+        for (String version : versions) {
+            xml.append("<CommonPrefixes><Prefix>").append(version).append("/</Prefix></CommonPrefixes>");
+        }
+        return xml.append("</ListBucketResult>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates a driver binary of the specified size, which compresses to about a half like real executables.
+     *
+     * @param size size in bytes
+     * @return binary
+     */
+    static byte[] binary(int size) {
+        final byte[] binary = new byte[size];
+        final Random random = new Random(42);
+        final byte[] block = new byte[2048];
+        for (int i = 0; i < size; i += block.length * 2) {
+            random.nextBytes(block);
+            System.arraycopy(block, 0, binary, i, Math.min(block.length, size - i));
+        }
+        return binary;
+    }
+
+    static void zip(Path archive, String name, byte[] binary) throws IOException {
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zos.putNextEntry(new ZipEntry(name));
+            zos.write(binary);
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("LICENSE.chromedriver"));
+            zos.write(binary, 0, 4096);
+            zos.closeEntry();
+        }
+    }
+
+    static void tarGz(Path archive, String name, byte[] binary) throws IOException {
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(archive));
+             TarArchiveOutputStream tos = new TarArchiveOutputStream(os)) {
+            final TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(binary.length);
+            entry.setMode(0100755);
+            tos.putArchiveEntry(entry);
+            tos.write(binary);
+            tos.closeArchiveEntry();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * driver version resolution from the browser version
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VersionResolutionBenchmark {
+    /**
+     * number of versions listed. the real listing had about 400 entries in 2021
+     */
+    @Param({"400", "5000"})
+    int listingSize;
+
+    /**
+     * exact match, fallback within the build, and fallback to an older major
+     */
+    @Param({"exact", "sameBuild", "olderMajor"})
+    String lookup;
+
+    private final ChromeDriverInstaller chrome = new ChromeDriverInstaller();
+    private final GeckodriverInstaller gecko = new GeckodriverInstaller();
+    private List<String> versions;
+    private VersionIndex index;
+    private String browserVersion;
+
+    @Setup
+    public void setUp() {
+        versions = Fixtures.versions(listingSize);
+        index = new VersionIndex(versions);
+        switch (lookup) {
+            case "exact":
+                browserVersion = versions.get(versions.size() / 2);
+                break;
+            case "sameBuild":
+                browserVersion = "100.0.5000.9999";
+                break;
+            default:
+                browserVersion = "130.0.6500.1";
+        }
+    }
+
+    /**
+     * baseline: the lookup before VersionIndex, scanning the listing for each candidate prefix and major version
+     */
+    @Benchmark
+    public String chromeLinearScan() {
+        return linearScan(versions, browserVersion);
+    }
+
+    @Benchmark
+    public VersionIndex chromeIndexListing() {
+        // done once per listing, as the index is reused while the listing is unchanged
+        return new VersionIndex(versions);
+    }
+
+    @Benchmark
+    public String chromeFromListing() {
+        return chrome.getSuitableDriverVersion(versions, browserVersion);
+    }
+
+    @Benchmark
+    public String chromeFromIndex() {
+        return chrome.getSuitableDriverVersion(index, browserVersion);
+    }
+
+    @Benchmark
+    public String gecko() {
+        return gecko.getSuitableDriverVersion("88.0.1");
+    }
+
+    private static String linearScan(List<String> availableVersions, String installedVersion) {
+        if (availableVersions.contains(installedVersion)) {
+            return installedVersion;
+        }
+        String fallbackVersion = null;
+        while (fallbackVersion == null && installedVersion.contains(".")) {
+            installedVersion = installedVersion.substring(0, installedVersion.lastIndexOf("."));
+            for (int i = availableVersions.size() - 1; 0 <= i; i--) {
+                if (availableVersions.get(i).contains(installedVersion)) {
+                    fallbackVersion = availableVersions.get(i);
+                    break;
+                }
+            }
+        }
+        if (fallbackVersion == null) {
+            int installedMajorVersion = Integer.parseInt(installedVersion);
+            for (int i = installedMajorVersion - 1; 0 < i && fallbackVersion == null; i--) {
+                String checkVersion = String.valueOf(i);
+                for (int j = availableVersions.size() - 1; 0 <= j; j--) {
+                    String majorVersion = availableVersions.get(j).substring(0, availableVersions.get(j).indexOf("."));
+                    if (majorVersion.contains(checkVersion)) {
+                        fallbackVersion = availableVersions.get(j);
+                        break;
+                    }
+                }
+            }
+        }
+        return fallbackVersion;
+    }
+}
@@ -1,8 +1,10 @@
 module one.cafebabe.webdriverinstaller {
     exports one.cafebabe.webdriverinstaller;
     requires java.logging;
+    requires static jdk.httpserver;
     requires java.xml;
     requires org.apache.commons.compress;
     requires static org.slf4j;
     requires static org.jetbrains.annotations;
+    uses one.cafebabe.webdriverinstaller.InstallListener;
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * installs drivers for a list of browser versions at once, e.g. to bake drivers into CI images.
+ * <pre>
+ * java -cp webdriver-installer.jar:commons-compress.jar one.cafebabe.webdriverinstaller.BatchInstaller manifest.txt [parallelism]
+ * </pre>
+ * Each line of the manifest is &lt;chrome|firefox&gt; &lt;browser version, or range of major versions&gt; [install root]. e.g.
+ * <pre>
+ * # latest ChromeDriver of Chrome 88, installed in CHROME_DRIVER_HOME
+ * chrome 88
+ * chrome 87.0.4280.88 /opt/chromedriver
+ * # geckodriver for Firefox 78 through 91
+ * firefox 78-91
+ * </pre>
+ */
+final class BatchInstaller {
+
+    public static void main(String... args) throws IOException {
+        int parallelism = 4;
+        if (1 < args.length) {
+            try {
+                parallelism = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                parallelism = 0;
+            }
+        }
+        if (args.length == 0 || parallelism < 1) {
+            System.err.println("usage: BatchInstaller <manifest> [parallelism]");
+            System.exit(2);
+        }
+        final List<Item> items;
+        try {
+            items = parse(Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            System.err.println(args[0] + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        final int failures = install(items, parallelism, BatchInstaller::newInstaller, System.out);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * manifest entry
+     */
+    static final class Item {
+        final String driver;
+        final String browserVersion;
+        final String installRoot;
+
+        Item(String driver, String browserVersion, String installRoot) {
+            this.driver = driver;
+            this.browserVersion = browserVersion;
+            this.installRoot = installRoot;
+        }
+
+        @Override
+        public String toString() {
+            return driver + " " + browserVersion;
+        }
+    }
+
+    /**
+     * Parses the manifest. Ranges of major versions are expanded to each major version.
+     *
+     * @param lines lines of the manifest
+     * @return items to install
+     * @throws IllegalArgumentException when a line is malformed
+     */
+    @NotNull
+    static List<Item> parse(List<String> lines) {
+        final List<Item> items = new ArrayList<>();
+        for (String line : lines) {
+            final String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            final String[] tokens = trimmed.split("\\s+");
+            if (tokens.length < 2 || 3 < tokens.length) {
+                throw new IllegalArgumentException("Unexpected manifest line: " + line);
+            }
+            final String driver;
+            final String defaultInstallRoot;
+            switch (tokens[0]) {
+                case "chrome":
+                case "chromedriver":
+                    driver = "chromedriver";
+                    defaultInstallRoot = WebDriverInstaller.getChromeDriverHome();
+                    break;
+                case "firefox":
+                case "geckodriver":
+                    driver = "geckodriver";
+                    defaultInstallRoot = WebDriverInstaller.getGeckoDriverHome();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown browser: " + tokens[0]);
+            }
+            final String installRoot = tokens.length == 3 ? tokens[2] : defaultInstallRoot;
+            final int dash = tokens[1].indexOf('-');
+            if (0 < dash) {
+                final int from;
+                final int to;
+                try {
+                    from = Integer.parseInt(tokens[1].substring(0, dash));
+                    to = Integer.parseInt(tokens[1].substring(dash + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Unexpected version range: " + line);
+                }
+                if (to < from) {
+                    throw new IllegalArgumentException("Unexpected version range: " + line);
+                }
+                for (int major = from; major <= to; major++) {
+                    items.add(new Item(driver, String.valueOf(major), installRoot));
+                }
+            } else {
+                items.add(new Item(driver, tokens[1], installRoot));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Installs the items in parallel, reporting each item and a summary.
+     *
+     * @param items       items to install
+     * @param parallelism maximum number of items installed at once
+     * @param installers  creates an installer of the driver
+     * @param out         where to report
+     * @return number of failed items
+     */
+    static int install(List<Item> items, int parallelism, Function<String, WebDriverInstaller> installers, PrintStream out) {
+        final long start = System.nanoTime();
+        final AtomicInteger failures = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, "webdriver-installer-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Item item : items) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    final long itemStart = System.nanoTime();
+                    String result;
+                    try {
+                        // one installer per item, as an installer installs only once
+                        final Optional<String> path = installers.apply(item.driver).ensureInstalled(item.installRoot, item.browserVersion);
+                        if (path.isPresent() && Files.exists(Paths.get(path.get()))) {
+                            result = "installed " + path.get();
+                        } else {
+                            failures.incrementAndGet();
+                            result = "FAILED";
+                        }
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                        result = "FAILED " + e.getMessage();
+                    }
+                    final String line = String.format("%-30s %6d ms  %s", item, (System.nanoTime() - itemStart) / 1_000_000, result);
+                    synchronized (out) {
+                        out.println(line);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+        out.printf("%d installed, %d failed in %d ms%n", items.size() - failures.get(), failures.get(), (System.nanoTime() - start) / 1_000_000);
+        return failures.get();
+    }
+
+    @NotNull
+    private static WebDriverInstaller newInstaller(String driver) {
+        return "chromedriver".equals(driver) ? new ChromeDriverInstaller() : new GeckodriverInstaller();
+    }
+}
@@ -16,16 +16,19 @@
 package one.cafebabe.webdriverinstaller;
 
 import org.jetbrains.annotations.NotNull;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @SuppressWarnings("WeakerAccess")
@@ -46,20 +49,70 @@ final class ChromeDriverInstaller extends WebDriverInstaller {
         }
     }
 
+    /**
+     * environment variable to specify where ChromeDriver is fetched from. base url of a mirror, or a local directory
+     */
+    static final String REPOSITORY_ENV_NAME = "CHROME_DRIVER_REPOSITORY";
+
+    /**
+     * system property to specify where ChromeDriver is fetched from. base url of a mirror, or a local directory
+     */
+    static final String REPOSITORY_PROPERTY_NAME = "chromedriver.repository";
+
+    private static final String DEFAULT_REPOSITORY = "https://chromedriver.storage.googleapis.com";
+    private static final String LISTING_PATH = "/?delimiter=/&prefix=";
+
+    /**
+     * file name of the version listing cached under the install root
+     */
+    static final String LISTING_CACHE_FILE_NAME = "chromedriver-versions.properties";
+
+    /**
+     * environment variable to specify how long the cached version listing is used without revalidation, in seconds
+     */
+    static final String LISTING_TTL_ENV_NAME = "CHROME_DRIVER_LISTING_TTL";
+
+    /**
+     * system property to specify how long the cached version listing is used without revalidation, in seconds
+     */
+    static final String LISTING_TTL_PROPERTY_NAME = "chromedriver.listing.ttl";
+    private static final long DEFAULT_LISTING_TTL = 3600;
+
+    /**
+     * environment variable to specify expected SHA-256 of the ChromeDriver archive, either a digest in hex or a url of a digest file
+     */
+    static final String CHECKSUM_ENV_NAME = "CHROME_DRIVER_SHA256";
+
+    /**
+     * system property to specify expected SHA-256 of the ChromeDriver archive, either a digest in hex or a url of a digest file
+     */
+    static final String CHECKSUM_PROPERTY_NAME = "chromedriver.sha256";
+
     ChromeDriverInstaller() {
         super("1", "Google Chrome", "chromedriver", "google-chrome", "/Applications/Google Chrome.app/Contents/MacOS/Google Chrome", "chrome.exe");
     }
 
     @Override
     @NotNull
-    String toFileName(String version) {
-        return "chromedriver_" + choose("linux32", "linux64", "mac64", "win32", "win32") + ".zip";
+    String toFileName(String version, OS os) {
+        return "chromedriver_" + choose(os, "linux32", "linux64", "mac64", "win32", "win32") + ".zip";
+    }
+
+    @Override
+    String getChecksumConfig() {
+        return getConfig(CHECKSUM_ENV_NAME, CHECKSUM_PROPERTY_NAME, null);
     }
 
     @Override
     @NotNull
     String getDownloadURL(String version, String fileName) {
-        return "https://chromedriver.storage.googleapis.com/" + version + "/" + fileName;
+        return getRepository().getArchiveURL(version, fileName);
+    }
+
+    @NotNull
+    DriverRepository getRepository() {
+        return DriverRepository.of(getConfig(REPOSITORY_ENV_NAME, REPOSITORY_PROPERTY_NAME, DEFAULT_REPOSITORY),
+                LISTING_PATH, ChromeDriverInstaller::parseListing);
     }
 
     @Override
@@ -68,64 +121,144 @@ final class ChromeDriverInstaller extends WebDriverInstaller {
         return getSuitableDriverVersion(availableVersions, installedVersion);
     }
 
+    @Override
+    String getSuitableDriverVersion(Path installRoot, String installedVersion) {
+        List<String> availableVersions = listAvailableChromeDriverVersions(installRoot);
+        return getSuitableDriverVersion(availableVersions, installedVersion);
+    }
+
+    /**
+     * the listing indexed last, and its index. a daemon resolves on each request, mostly against the same listing
+     */
+    private static volatile Map.Entry<List<String>, VersionIndex> lastIndexed;
+
     String getSuitableDriverVersion(List<String> availableVersions, String installedVersion) {
-        listAvailableChromeDriverVersions();
-        if (availableVersions.contains(installedVersion)) {
-            return installedVersion;
+        return getSuitableDriverVersion(index(availableVersions), installedVersion);
+    }
+
+    /**
+     * @param availableVersions versions
+     * @return index of the versions, reused while the listing is unchanged
+     */
+    static VersionIndex index(List<String> availableVersions) {
+        final Map.Entry<List<String>, VersionIndex> last = lastIndexed;
+        if (last != null && last.getKey().equals(availableVersions)) {
+            return last.getValue();
+        }
+        final VersionIndex index = new VersionIndex(availableVersions);
+        lastIndexed = new AbstractMap.SimpleImmutableEntry<>(new ArrayList<>(availableVersions), index);
+        return index;
+    }
+
+    String getSuitableDriverVersion(VersionIndex availableVersions, String installedVersion) {
+        final String exactVersion = availableVersions.get(installedVersion);
+        if (exactVersion != null) {
+            return exactVersion;
         }
         logger.info(String.format("ChromeDriver version %s is not available.", installedVersion));
+        final int[] components = VersionIndex.parse(installedVersion);
+        if (components == null) {
+            throw new IllegalStateException("Unexpected Chrome version: " + installedVersion);
+        }
         String fallbackVersion = null;
-        while (fallbackVersion == null && installedVersion.contains(".")) {
-            // When Chrome version is 88.0.4324.104 and chrome driver version 88.0.4324.104 is not available,
-            // look up the latest 88.0.4324.**, 88.0.** …
-            installedVersion = installedVersion.substring(0, installedVersion.lastIndexOf("."));
-            for (int i = availableVersions.size() - 1; 0 <= i; i--) {
-                if (availableVersions.get(i).contains(installedVersion)) {
-                    fallbackVersion = availableVersions.get(i);
-                    break;
-                }
-            }
+        // When Chrome version is 88.0.4324.104 and chrome driver version 88.0.4324.104 is not available,
+        // look up the latest 88.0.4324.**, 88.0.**, 88.**
+        for (int length = components.length; fallbackVersion == null && 0 < length; length--) {
+            fallbackVersion = availableVersions.latestWithPrefix(Arrays.copyOf(components, length));
         }
         if (fallbackVersion == null) {
             // find the latest, but older major version
-            int installedMajorVersion = Integer.parseInt(installedVersion);
-            for (int i = installedMajorVersion - 1; 0 < i && fallbackVersion == null; i--) {
-                String checkVersion = String.valueOf(i);
-                for (int j = availableVersions.size() - 1; 0 <= j; j--) {
-                    String majorVersion = availableVersions.get(j).substring(0, availableVersions.get(j).indexOf("."));
-                    if (majorVersion.contains(checkVersion)) {
-                        fallbackVersion = availableVersions.get(j);
-                        break;
-                    }
-                }
-            }
+            fallbackVersion = availableVersions.latestBeforeMajor(components[0]);
+        }
+        if (fallbackVersion == null) {
+            throw new IllegalStateException("No ChromeDriver available for Chrome version " + installedVersion);
         }
-        assert (fallbackVersion != null);
         logger.info(String.format("Fallback to Chrome Driver version %s.", fallbackVersion));
         return fallbackVersion;
     }
 
     List<String> listAvailableChromeDriverVersions() {
-        final URLConnection con;
         try {
-            con = new URL("https://chromedriver.storage.googleapis.com/?delimiter=/&prefix=").openConnection();
-            con.setConnectTimeout(5000);
-            con.setReadTimeout(5000);
-            final org.w3c.dom.Document doc = DocumentBuilderFactory
-                    .newInstance()
-                    .newDocumentBuilder().parse(con.getInputStream());
-            final NodeList prefix = doc.getElementsByTagName("Prefix");
-            List<String> versions = new ArrayList<>();
-            for (int i = 0; i < prefix.getLength(); i++) {
-                final String textContent = prefix.item(i).getTextContent();
-                if (textContent.matches("[0-9./]+")) {
-                    versions.add(textContent.replace("/", ""));
+            return getRepository().listVersions(null, 0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Lists available ChromeDriver versions using the listing cached under the install root.
+     * The cached listing is used as is within TTL specified by CHROME_DRIVER_LISTING_TTL environment variable or chromedriver.listing.ttl system property (in seconds, defaults to 3600),
+     * and revalidated with a conditional GET afterwards.
+     *
+     * @param installRoot directory where the listing is cached
+     * @return available versions
+     */
+    List<String> listAvailableChromeDriverVersions(Path installRoot) {
+        final ListingCache cache = ListingCache.load(installRoot.resolve(LISTING_CACHE_FILE_NAME));
+        final long ttlMillis = getListingTtlSeconds() * 1000;
+        try {
+            final List<String> versions = getRepository().listVersions(cache, ttlMillis);
+            versionsFromCache = cache.isServed();
+            return versions;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return TTL of the cached version listing in seconds. the default is used when the configured value is not a number
+     */
+    static long getListingTtlSeconds() {
+        return getConfigLong(LISTING_TTL_ENV_NAME, LISTING_TTL_PROPERTY_NAME, DEFAULT_LISTING_TTL);
+    }
+
+    /**
+     * Parses the bucket listing with a streaming parser. Only the text of &lt;Prefix&gt; elements is read, the rest of the document is skipped as it arrives.
+     *
+     * @param is listing
+     * @return versions in the order of the listing
+     * @throws IOException when failed to read or parse the listing
+     */
+    static List<String> parseListing(InputStream is) throws IOException {
+        List<String> versions = new ArrayList<>();
+        XMLStreamReader reader = null;
+        try {
+            // XMLInputFactory is not guaranteed to be thread safe
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            reader = factory.createXMLStreamReader(is);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "Prefix".equals(reader.getLocalName())) {
+                    final String prefix = reader.getElementText();
+                    if (isVersionPrefix(prefix)) {
+                        versions.add(prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix);
+                    }
                 }
             }
             return versions;
-        } catch (IOException | ParserConfigurationException | SAXException e) {
-            throw new IllegalStateException(e);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignore) {
+                }
+            }
         }
+    }
 
+    private static boolean isVersionPrefix(String prefix) {
+        if (prefix.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            final char c = prefix.charAt(i);
+            if ((c < '0' || '9' < c) && c != '.' && c != '/') {
+                return false;
+            }
+        }
+        return true;
     }
 }
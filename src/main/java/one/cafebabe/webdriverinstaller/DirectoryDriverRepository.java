@@ -0,0 +1,61 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * driver archives in a local directory, e.g. a shared mount populated by a build farm.
+ * Each subdirectory is a version.
+ */
+final class DirectoryDriverRepository implements DriverRepository {
+    private final Path directory;
+
+    DirectoryDriverRepository(Path directory) {
+        this.directory = directory.toAbsolutePath();
+    }
+
+    @NotNull
+    @Override
+    public String getArchiveURL(String version, String fileName) {
+        return directory.resolve(version).resolve(fileName).toUri().toString();
+    }
+
+    @NotNull
+    @Override
+    public List<String> listVersions(@Nullable ListingCache cache, long ttlMillis) throws IOException {
+        List<String> versions = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path path : stream) {
+                versions.add(path.getFileName().toString());
+            }
+        }
+        return versions;
+    }
+
+    @Override
+    public String toString() {
+        return directory.toString();
+    }
+}
@@ -0,0 +1,381 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * downloads a file through a partial file which survives failures.
+ * The next attempt resumes the partial file with a Range request, as long as the ETag (or Last-Modified) and the length of the resource haven't changed.
+ * Optionally, large resources are fetched in byte ranges over concurrent connections when the server supports ranges.
+ */
+final class Downloader {
+    private final static Logger logger = Logger.getLogger();
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * environment variable to specify the number of concurrent connections to download an archive
+     */
+    static final String SEGMENTS_ENV_NAME = "WEBDRIVER_INSTALLER_DOWNLOAD_SEGMENTS";
+    /**
+     * system property to specify the number of concurrent connections to download an archive
+     */
+    static final String SEGMENTS_PROPERTY_NAME = "webdriverinstaller.download.segments";
+
+    private Downloader() {
+    }
+
+    /**
+     * Downloads the resource to the specified path.
+     *
+     * @param downloadURL url to download
+     * @param target      path to be written. written only when the download completes
+     * @return SHA-256 digest of the resource in hex
+     * @throws IOException when failed to download. the partial file is kept for the next attempt
+     */
+    static String download(String downloadURL, Path target) throws IOException {
+        return download(downloadURL, target, null);
+    }
+
+    /**
+     * Downloads the resource to the specified path. The SHA-256 digest is computed while the bytes are written.
+     *
+     * @param downloadURL    url to download
+     * @param target         path to be written. written only when the download completes and the digest matches
+     * @param expectedSha256 expected SHA-256 digest in hex, or null not to verify
+     * @return SHA-256 digest of the resource in hex
+     * @throws IOException when failed to download, or the digest doesn't match
+     */
+    static String download(String downloadURL, Path target, @Nullable String expectedSha256) throws IOException {
+        final Path partial = partialPath(target);
+        final Path metadata = metadataPath(target);
+        Files.createDirectories(target.toAbsolutePath().getParent());
+
+        final Properties resumeFrom = loadMetadata(metadata);
+        final long partialLength = Files.exists(partial) ? Files.size(partial) : 0;
+        final String validator = resumeFrom.getProperty("etag", resumeFrom.getProperty("last-modified"));
+        final long expectedLength = parseLong(resumeFrom.getProperty("length"));
+
+        Map<String, String> headers = new HashMap<>();
+        // without ETag nor Last-Modified, the partial file is validated against the length of the resource only
+        final boolean resuming = 0 < partialLength && partialLength <= expectedLength;
+        final MessageDigest digest = sha256();
+        if (resuming) {
+            // the bytes already on disk are hashed once, the rest inline
+            digest(partial, digest);
+            if (partialLength == expectedLength) {
+                return complete(partial, metadata, target, expectedLength, digest, expectedSha256);
+            }
+            headers.put("Range", "bytes=" + partialLength + "-");
+            if (validator != null) {
+                headers.put("If-Range", validator);
+            }
+        }
+        final int segments = (int) WebDriverInstaller.getConfigLong(SEGMENTS_ENV_NAME, SEGMENTS_PROPERTY_NAME, 1);
+        if (!resuming && 1 < segments) {
+            // an open-ended range tells whether the server supports ranges, and the total length, without an extra round trip
+            headers.put("Range", "bytes=0-");
+        }
+        // the request is hedged, but the body is always read from one response
+        boolean restart = false;
+        try (Http.Response response = RetryPolicy.fromConfig().hedge(() -> Http.get(downloadURL, headers))) {
+            final long position;
+            final long length;
+            if (!resuming && 1 < segments && response.code() == 206) {
+                final long total = totalLength(response.header("Content-Range"));
+                if (!isContinuation(response.header("Content-Range"), 0, total)) {
+                    throw new IOException("URL[" + downloadURL + "] returns unexpected Content-Range [" + response.header("Content-Range") + "].");
+                }
+                // holes of an interrupted segmented download can't be told apart, so it's never resumed
+                Files.deleteIfExists(metadata);
+                downloadSegments(downloadURL, response, partial, total, segments);
+                // segments arrive out of order, so they are hashed after the download
+                digest(partial, digest);
+                return complete(partial, metadata, target, total, digest, expectedSha256);
+            } else if (resuming && response.code() == 206 && isContinuation(response.header("Content-Range"), partialLength, expectedLength)) {
+                logger.info(() -> "Resuming download of " + downloadURL + " from " + partialLength + " bytes.");
+                position = partialLength;
+                length = expectedLength;
+            } else if (resuming && (response.code() == 416 || response.code() == 206)) {
+                // the server doesn't agree with the partial file. start over
+                logger.warn(() -> "URL[" + downloadURL + "] returns code [" + response.code() + "] not continuing " + partial + ", discarded.");
+                Files.deleteIfExists(partial);
+                Files.deleteIfExists(metadata);
+                restart = true;
+                position = 0;
+                length = -1;
+            } else if (response.code() == 200) {
+                position = 0;
+                length = parseLong(response.header("Content-Length"));
+                saveMetadata(metadata, response.header("ETag"), response.header("Last-Modified"), length);
+            } else {
+                throw new HttpStatusException(downloadURL, response.code());
+            }
+            if (!restart) {
+                if (position == 0) {
+                    digest.reset();
+                }
+                transfer(new DigestInputStream(response.body(), digest), partial, position);
+                return complete(partial, metadata, target, length, digest, expectedSha256);
+            }
+        }
+        // without the partial file, the next request never resumes
+        return download(downloadURL, target, expectedSha256);
+    }
+
+    /**
+     * Downloads the resource in byte ranges over concurrent connections into a preallocated file.
+     *
+     * @param downloadURL   url to download
+     * @param firstResponse response to "Range: bytes=0-", used for the first segment
+     * @param partial       file to be written
+     * @param total         length of the resource
+     * @param segments      maximum number of concurrent connections
+     * @throws IOException when any of the segments fails
+     */
+    private static void downloadSegments(String downloadURL, Http.Response firstResponse, Path partial, long total, int segments) throws IOException {
+        final long segmentSize = Math.max(MIN_SEGMENT_SIZE, (total + segments - 1) / segments);
+        final int count = (int) ((total + segmentSize - 1) / segmentSize);
+        logger.info(() -> "Downloading " + downloadURL + " in " + count + " segments.");
+        final String etag = firstResponse.header("ETag");
+        final ExecutorService executor = 1 < count ? Executors.newFixedThreadPool(count - 1, r -> {
+            Thread thread = new Thread(r, "webdriver-installer-download");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        try (FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // preallocate
+            out.write(ByteBuffer.allocate(1), total - 1);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 1; i < count; i++) {
+                final long start = i * segmentSize;
+                final long end = Math.min(total, start + segmentSize) - 1;
+                //noinspection ConstantConditions
+                futures.add(executor.submit(() -> {
+                    Map<String, String> headers = new HashMap<>();
+                    headers.put("Range", "bytes=" + start + "-" + end);
+                    if (etag != null) {
+                        headers.put("If-Range", etag);
+                    }
+                    try (Http.Response response = Http.get(downloadURL, headers)) {
+                        if (response.code() != 206) {
+                            throw new HttpStatusException(downloadURL, response.code());
+                        }
+                        if (!isRange(response.header("Content-Range"), start, end, total)) {
+                            throw new IOException("URL[" + downloadURL + "] returns unexpected Content-Range [" + response.header("Content-Range") + "] for range " + start + "-" + end + ".");
+                        }
+                        transferRange(response.body(), out, start, end - start + 1);
+                    }
+                    return null;
+                }));
+            }
+            transferRange(firstResponse.body(), out, 0, Math.min(total, segmentSize));
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while downloading " + downloadURL);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void transferRange(InputStream body, FileChannel out, long position, long length) throws IOException {
+        final ReadableByteChannel in = Channels.newChannel(body);
+        long remaining = length;
+        long transferred;
+        while (0 < remaining && 0 < (transferred = out.transferFrom(in, position, Math.min(remaining, TRANSFER_CHUNK_SIZE)))) {
+            position += transferred;
+            remaining -= transferred;
+        }
+        if (0 < remaining) {
+            // the connection was closed before the whole range arrived
+            throw new EOFException("Premature end of range: " + remaining + " bytes missing.");
+        }
+    }
+
+    private static boolean isRange(@Nullable String contentRange, long start, long end, long total) {
+        return ("bytes " + start + "-" + end + "/" + total).equals(contentRange);
+    }
+
+    private static long totalLength(@Nullable String contentRange) {
+        return contentRange == null ? -1 : parseLong(contentRange.substring(contentRange.indexOf('/') + 1));
+    }
+
+    static Path partialPath(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part");
+    }
+
+    private static Path metadataPath(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part.properties");
+    }
+
+    private static void transfer(InputStream body, Path partial, long position) throws IOException {
+        try (ReadableByteChannel in = Channels.newChannel(body);
+             FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.truncate(position);
+            long transferred;
+            while (0 < (transferred = out.transferFrom(in, position, TRANSFER_CHUNK_SIZE))) {
+                position += transferred;
+            }
+        }
+    }
+
+    private static String complete(Path partial, Path metadata, Path target, long expectedLength,
+                                   MessageDigest digest, @Nullable String expectedSha256) throws IOException {
+        final long actualLength = Files.size(partial);
+        if (0 <= expectedLength && actualLength != expectedLength) {
+            // the connection was closed before the whole body arrived
+            throw new EOFException("Incomplete download: " + actualLength + " of " + expectedLength + " bytes. " + partial);
+        }
+        final String sha256 = toHex(digest.digest());
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+            // never resume a corrupted file
+            Files.deleteIfExists(partial);
+            Files.deleteIfExists(metadata);
+            throw new IOException("SHA-256 mismatch. expected: " + expectedSha256 + ", actual: " + sha256 + ". " + partial);
+        }
+        try {
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(metadata);
+        return sha256;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void digest(Path file, MessageDigest digest) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        try (InputStream is = Files.newInputStream(file)) {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param contentRange   Content-Range header. e.g. bytes 100-199/200
+     * @param partialLength  length of the partial file
+     * @param expectedLength length of the whole resource
+     * @return true if the response continues the partial file
+     */
+    static boolean isContinuation(@Nullable String contentRange, long partialLength, long expectedLength) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return false;
+        }
+        final int dash = contentRange.indexOf('-');
+        final int slash = contentRange.indexOf('/');
+        if (dash < 0 || slash < dash) {
+            return false;
+        }
+        try {
+            final long start = Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+            final long end = Long.parseLong(contentRange.substring(dash + 1, slash).trim());
+            final long total = Long.parseLong(contentRange.substring(slash + 1).trim());
+            return start == partialLength && end == expectedLength - 1 && total == expectedLength;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static long parseLong(@Nullable String value) {
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Properties loadMetadata(Path metadata) {
+        Properties p = new Properties();
+        if (Files.exists(metadata)) {
+            try (InputStream is = Files.newInputStream(metadata)) {
+                p.load(is);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.warn(() -> "Ignoring broken download metadata: " + metadata);
+                p.clear();
+            }
+        }
+        return p;
+    }
+
+    private static void saveMetadata(Path metadata, @Nullable String etag, @Nullable String lastModified, long length) throws IOException {
+        Properties p = new Properties();
+        if (etag != null) {
+            p.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            p.setProperty("last-modified", lastModified);
+        }
+        p.setProperty("length", String.valueOf(length));
+        try (OutputStream os = Files.newOutputStream(metadata)) {
+            p.store(os, "partial download");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * where driver archives and version listings are fetched from.
+ * Archives are laid out as &lt;base&gt;/&lt;version&gt;/&lt;file name&gt;, which is the layout of the upstream sites, so a mirror or a plain directory can stand in for them.
+ */
+interface DriverRepository {
+
+    /**
+     * @param version  driver version
+     * @param fileName archive file name
+     * @return url of the archive
+     */
+    @NotNull
+    String getArchiveURL(String version, String fileName);
+
+    /**
+     * Lists available driver versions.
+     *
+     * @param cache     listing cached on disk, or null to always fetch. repositories which can list cheaply ignore it
+     * @param ttlMillis how long the cached listing is used without revalidation
+     * @return available versions
+     * @throws IOException when failed to list versions
+     */
+    @NotNull
+    List<String> listVersions(@Nullable ListingCache cache, long ttlMillis) throws IOException;
+
+    /**
+     * Returns repository at the specified location.
+     *
+     * @param location    file: url or path of a local directory, or base url of an HTTP repository
+     * @param listingPath path of the version listing relative to the base url of an HTTP repository, or null if unavailable
+     * @param parser      parser of the version listing, or null if unavailable
+     * @return repository
+     */
+    @NotNull
+    static DriverRepository of(String location, @Nullable String listingPath, @Nullable ListingParser parser) {
+        if (location.startsWith("file:")) {
+            return new DirectoryDriverRepository(Paths.get(URI.create(location)));
+        }
+        if (!location.contains("://")) {
+            return new DirectoryDriverRepository(Paths.get(location));
+        }
+        final String base = location.endsWith("/") ? location.substring(0, location.length() - 1) : location;
+        return new HttpDriverRepository(base, listingPath == null ? null : base + listingPath, parser);
+    }
+
+    /**
+     * parses version listing served by an HTTP repository
+     */
+    interface ListingParser {
+        @NotNull
+        List<String> parse(InputStream is) throws IOException;
+    }
+}
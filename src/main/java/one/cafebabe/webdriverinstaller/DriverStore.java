@@ -0,0 +1,169 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+/**
+ * machine-wide store of extracted drivers shared by install roots.
+ * Installs are kept under objects/&lt;SHA-256 of the archive&gt;, and refs/&lt;SHA-256 of the url&gt; records which object a url resolved to,
+ * so a url is downloaded and extracted once per machine. Install roots get hard links to the object files, or copies when linking is not possible.
+ */
+final class DriverStore {
+    private final static Logger logger = Logger.getLogger();
+
+    /**
+     * environment variable to specify the directory of the shared driver store
+     */
+    static final String STORE_ENV_NAME = "WEBDRIVER_INSTALLER_STORE";
+    /**
+     * system property to specify the directory of the shared driver store
+     */
+    static final String STORE_PROPERTY_NAME = "webdriverinstaller.store";
+
+    private final Path root;
+
+    DriverStore(Path root) {
+        this.root = root.toAbsolutePath();
+    }
+
+    /**
+     * @return the configured store, or null if the store is not enabled
+     */
+    @Nullable
+    static DriverStore fromConfig() {
+        final String root = WebDriverInstaller.getConfig(STORE_ENV_NAME, STORE_PROPERTY_NAME, null);
+        return root == null || root.trim().isEmpty() ? null : new DriverStore(Paths.get(root.trim()));
+    }
+
+    /**
+     * Installs the driver into the install directory from the store, filling the store first if the url hasn't been stored yet.
+     *
+     * @param driverName      driver name reported in events
+     * @param version         driver version reported in events
+     * @param downloadURL     url of the archive
+     * @param fileName        archive file name
+     * @param binName         driver binary name
+     * @param expectedSha256  expected SHA-256 of the archive, or null not to verify
+     * @param installRootPath install directory
+     * @return true if the driver was already in the store
+     * @throws IOException when failed to download, or to install
+     */
+    boolean install(String driverName, String version, String downloadURL, String fileName, String binName, @Nullable String expectedSha256, Path installRootPath) throws IOException {
+        final String urlKey = Downloader.toHex(Downloader.sha256().digest(downloadURL.getBytes(StandardCharsets.UTF_8)));
+        final long start = System.nanoTime();
+        Path object;
+        final boolean stored;
+        try (InstallLock ignored = InstallLock.acquire(root.resolve("refs").resolve(urlKey + ".lock"))) {
+            object = lookup(urlKey, downloadURL, binName, expectedSha256);
+            stored = object != null;
+            if (stored) {
+                InstallListeners.fire(InstallEvent.Phase.DOWNLOAD, driverName, version, start, 0, true, true);
+            } else {
+                object = fill(urlKey, driverName, version, downloadURL, fileName, binName, expectedSha256);
+            }
+        }
+        final Path stagingPath = installRootPath.resolveSibling(installRootPath.getFileName() + ".tmp");
+        WebDriverInstaller.deleteRecursively(stagingPath);
+        linkTree(object, stagingPath);
+        WebDriverInstaller.publish(stagingPath, installRootPath);
+        final Path installedFrom = object;
+        logger.info(() -> "Installed " + fileName + " from the driver store: " + installedFrom);
+        return stored;
+    }
+
+    /**
+     * @return object directory the url resolved to before, or null if not stored
+     */
+    @Nullable
+    private Path lookup(String urlKey, String downloadURL, String binName, @Nullable String expectedSha256) throws IOException {
+        final Path ref = root.resolve("refs").resolve(urlKey);
+        if (!Files.exists(ref)) {
+            return null;
+        }
+        final String sha256 = new String(Files.readAllBytes(ref), StandardCharsets.US_ASCII).trim();
+        final Path object = root.resolve("objects").resolve(sha256);
+        if ((expectedSha256 == null || expectedSha256.equalsIgnoreCase(sha256)) && Files.exists(object.resolve(binName))) {
+            return object;
+        }
+        logger.warn(() -> "Ignoring stale driver store entry for " + downloadURL);
+        return null;
+    }
+
+    /**
+     * Downloads and extracts the archive into the store, and records the url.
+     *
+     * @return object directory containing the extracted archive
+     */
+    @NotNull
+    private Path fill(String urlKey, String driverName, String version, String downloadURL, String fileName, String binName, @Nullable String expectedSha256) throws IOException {
+        // objects/<url key>.incoming, its own staging directory is objects/<url key>.incoming.tmp
+        final Path incoming = root.resolve("objects").resolve(urlKey + ".incoming");
+        final String sha256 = WebDriverInstaller.download(driverName, version, downloadURL, incoming.resolve(fileName), incoming, incoming.resolve(binName), expectedSha256);
+        final Path object = root.resolve("objects").resolve(sha256);
+        // installs of different urls may publish the same archive at the same time
+        try (InstallLock ignored = InstallLock.acquire(root.resolve("objects").resolve(sha256 + ".lock"))) {
+            if (Files.exists(object.resolve(binName))) {
+                // same archive published under another url
+                WebDriverInstaller.deleteRecursively(incoming);
+            } else {
+                WebDriverInstaller.publish(incoming, object);
+            }
+        }
+        final Path ref = root.resolve("refs").resolve(urlKey);
+        final Path refTemp = Files.createTempFile(ref.getParent(), urlKey, ".tmp");
+        Files.write(refTemp, sha256.getBytes(StandardCharsets.US_ASCII));
+        try {
+            Files.move(refTemp, ref, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(refTemp, ref, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return object;
+    }
+
+    private static void linkTree(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                final Path destination = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(destination);
+                } else {
+                    link(path, destination);
+                }
+            }
+        }
+    }
+
+    private static void link(Path existing, Path link) throws IOException {
+        try {
+            Files.createLink(link, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            // across file systems, or not supported by the file system
+            logger.debug(() -> "Copying " + existing + " as hard link is not available: " + e.getMessage());
+            Files.copy(existing, link, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+}
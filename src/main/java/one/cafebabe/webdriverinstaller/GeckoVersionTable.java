@@ -0,0 +1,199 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * table of geckodriver versions and the Firefox versions they support, e.g. v0.29.1&lt;78 means v0.29.1 supports Firefox prior to 78.
+ * The table bundled in the jar is used until a newer table is fetched. Fetched tables are persisted in the install root,
+ * and refreshed in the background when they get older than TTL, so resolving a version never waits for the network.
+ */
+final class GeckoVersionTable {
+    private final static Logger logger = Logger.getLogger();
+
+    /**
+     * file name of the version table persisted in the install root
+     */
+    static final String FILE_NAME = "gecko-versions.properties";
+    /**
+     * environment variable to specify url of the version table
+     */
+    static final String URL_ENV_NAME = "GECKO_DRIVER_VERSIONS_URL";
+    /**
+     * system property to specify url of the version table
+     */
+    static final String URL_PROPERTY_NAME = "geckodriver.versions.url";
+    /**
+     * environment variable to specify how long the persisted version table is used before refreshed in the background, in seconds
+     */
+    static final String TTL_ENV_NAME = "GECKO_DRIVER_VERSIONS_TTL";
+    /**
+     * system property to specify how long the persisted version table is used before refreshed in the background, in seconds
+     */
+    static final String TTL_PROPERTY_NAME = "geckodriver.versions.ttl";
+
+    private static final String DEFAULT_URL = "https://raw.githubusercontent.com/Samuraism/webdriver-installer/main/resources/gecko-versions.properties";
+    private static final Pattern ENTRY = Pattern.compile("v?[0-9.]+<[0-9]+");
+    private static final Set<Path> REFRESHING = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private GeckoVersionTable() {
+    }
+
+    /**
+     * loaded on first use instead of class initialization
+     */
+    private static final class BundledHolder {
+        private static final String[] VERSIONS;
+
+        static {
+            try (InputStream is = GeckoVersionTable.class.getResourceAsStream("/" + FILE_NAME)) {
+                VERSIONS = parse(is);
+            } catch (IOException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    private static final class RefreshExecutorHolder {
+        private static final Executor EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "webdriver-installer-gecko-versions");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return version table bundled in the jar
+     */
+    @NotNull
+    static String[] bundled() {
+        return BundledHolder.VERSIONS;
+    }
+
+    /**
+     * Returns the version table persisted in the install root, or the bundled one. Schedules a background refresh if the persisted table is missing or stale.
+     *
+     * @param installRoot install root
+     * @return version table
+     */
+    @NotNull
+    static String[] load(Path installRoot) {
+        final Path file = installRoot.resolve(FILE_NAME);
+        final long ttlMillis = WebDriverInstaller.getConfigLong(TTL_ENV_NAME, TTL_PROPERTY_NAME, 86400) * 1000;
+        String[] versions = null;
+        long fetchedAt = 0;
+        if (Files.exists(file)) {
+            final Properties p = new Properties();
+            try (InputStream is = Files.newInputStream(file)) {
+                p.load(is);
+                versions = parse(p);
+                fetchedAt = Long.parseLong(p.getProperty("fetched-at", "0"));
+            } catch (IOException | RuntimeException e) {
+                logger.warn(() -> "Ignoring broken geckodriver version table: " + file);
+            }
+        }
+        if (versions == null || ttlMillis <= System.currentTimeMillis() - fetchedAt) {
+            refreshInBackground(file);
+        }
+        return versions != null ? versions : bundled();
+    }
+
+    private static void refreshInBackground(Path file) {
+        if (!REFRESHING.add(file)) {
+            return;
+        }
+        RefreshExecutorHolder.EXECUTOR.execute(() -> {
+            try {
+                refresh(file);
+            } catch (IOException | RuntimeException e) {
+                logger.debug(() -> "Failed to refresh geckodriver version table: " + e);
+            } finally {
+                REFRESHING.remove(file);
+            }
+        });
+    }
+
+    /**
+     * Fetches the version table and persists it.
+     *
+     * @param file file to persist the table
+     * @throws IOException when failed to fetch or to persist the table, or the fetched table is broken
+     */
+    static void refresh(Path file) throws IOException {
+        final String url = WebDriverInstaller.getConfig(URL_ENV_NAME, URL_PROPERTY_NAME, DEFAULT_URL);
+        final Properties p = new Properties();
+        final RetryPolicy retryPolicy = RetryPolicy.fromConfig();
+        retryPolicy.execute("fetch " + url, () -> {
+            try (Http.Response response = retryPolicy.hedge(() -> Http.getCompressible(url, Collections.emptyMap()))) {
+                if (response.code() != 200) {
+                    throw new HttpStatusException(url, response.code());
+                }
+                p.clear();
+                p.load(response.body());
+            }
+            return null;
+        });
+        if (parse(p) == null) {
+            throw new IOException("Broken geckodriver version table at " + url);
+        }
+        p.setProperty("fetched-at", String.valueOf(System.currentTimeMillis()));
+        WebDriverInstaller.storeProperties(p, file, "geckodriver version table fetched from " + url);
+        logger.debug(() -> "geckodriver version table refreshed from " + url);
+    }
+
+    @NotNull
+    private static String[] parse(InputStream is) throws IOException {
+        final Properties p = new Properties();
+        p.load(is);
+        final String[] versions = parse(p);
+        if (versions == null) {
+            throw new IOException("Broken geckodriver version table");
+        }
+        return versions;
+    }
+
+    /**
+     * @return entries of the table, or null if the table is broken
+     */
+    @Nullable
+    private static String[] parse(Properties p) {
+        final String table = p.getProperty("gecko-versions");
+        if (table == null) {
+            return null;
+        }
+        final String[] versions = table.trim().split(",");
+        for (String version : versions) {
+            if (!ENTRY.matcher(version).matches()) {
+                return null;
+            }
+        }
+        return versions;
+    }
+}
@@ -17,11 +17,8 @@ package one.cafebabe.webdriverinstaller;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.io.IOException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.nio.file.Path;
 import java.util.Optional;
-import java.util.Properties;
 
 @SuppressWarnings("WeakerAccess")
 final class GeckodriverInstaller extends WebDriverInstaller {
@@ -41,42 +38,76 @@ final class GeckodriverInstaller extends WebDriverInstaller {
         }
     }
 
+    /**
+     * environment variable to specify expected SHA-256 of the geckodriver archive, either a digest in hex or a url of a digest file
+     */
+    static final String CHECKSUM_ENV_NAME = "GECKO_DRIVER_SHA256";
+
+    /**
+     * system property to specify expected SHA-256 of the geckodriver archive, either a digest in hex or a url of a digest file
+     */
+    static final String CHECKSUM_PROPERTY_NAME = "geckodriver.sha256";
+
+    /**
+     * environment variable to specify where geckodriver is fetched from. base url of a mirror, or a local directory
+     */
+    static final String REPOSITORY_ENV_NAME = "GECKO_DRIVER_REPOSITORY";
+
+    /**
+     * system property to specify where geckodriver is fetched from. base url of a mirror, or a local directory
+     */
+    static final String REPOSITORY_PROPERTY_NAME = "geckodriver.repository";
+
+    private static final String DEFAULT_REPOSITORY = "https://github.com/mozilla/geckodriver/releases/download";
+
     GeckodriverInstaller() {
         super("webdriver.gecko.driver", "Firefox", "geckodriver", "firefox", "/Applications/Firefox.app/Contents/MacOS/firefox-bin", "firefox.exe");
     }
 
     @NotNull
     @Override
-    String toFileName(String version) {
-        String osString = choose("linux32", "linux64", "macos", "win32", "win64");
-        String suffix = choose(".tar.gz", ".tar.gz", ".tar.gz", ".zip", ".zip");
+    String toFileName(String version, OS os) {
+        String osString = choose(os, "linux32", "linux64", "macos", "win32", "win64");
+        String suffix = choose(os, ".tar.gz", ".tar.gz", ".tar.gz", ".zip", ".zip");
         return String.format("geckodriver-%s-%s%s", version, osString, suffix);
     }
 
+    @Override
+    String getChecksumConfig() {
+        return getConfig(CHECKSUM_ENV_NAME, CHECKSUM_PROPERTY_NAME, null);
+    }
+
     @NotNull
     @Override
     String getDownloadURL(String version, String fileName) {
-        return String.format("https://github.com/mozilla/geckodriver/releases/download/%s/%s",
-                version, fileName);
+        return getRepository().getArchiveURL(version, fileName);
     }
 
-    static final String[] versions;
-
-    static {
-        Properties p = new Properties();
-        try {
-            p.load(GeckodriverInstaller.class.getResourceAsStream("/gecko-versions.properties"));
-            URL url = new URL("https://raw.githubusercontent.com/Samuraism/webdriver-installer/main/resources/gecko-versions.properties");
-            URLConnection urlConnection = url.openConnection();
-            p.load(urlConnection.getInputStream());
-        } catch (IOException ignored) {
-        }
-        versions = p.getProperty("gecko-versions").split(",");
+    /**
+     * @return repository of geckodriver archives. versions are resolved from the version table, not from the repository
+     */
+    @NotNull
+    DriverRepository getRepository() {
+        return DriverRepository.of(getConfig(REPOSITORY_ENV_NAME, REPOSITORY_PROPERTY_NAME, DEFAULT_REPOSITORY), null, null);
     }
 
     @NotNull
     @Override
     String getSuitableDriverVersion(String firefoxVersion) {
+        return getSuitableDriverVersion(GeckoVersionTable.bundled(), firefoxVersion);
+    }
+
+    @NotNull
+    @Override
+    String getSuitableDriverVersion(Path installRoot, String firefoxVersion) {
+        final String[] versions = GeckoVersionTable.load(installRoot);
+        // the table persisted in the install root, unless the bundled one is returned
+        versionsFromCache = versions != GeckoVersionTable.bundled();
+        return getSuitableDriverVersion(versions, firefoxVersion);
+    }
+
+    @NotNull
+    static String getSuitableDriverVersion(String[] versions, String firefoxVersion) {
         final String version = firefoxVersion.trim().replaceAll("\\..*", "");
         final int intVersion = Integer.parseInt(version);
         for (String s : versions) {
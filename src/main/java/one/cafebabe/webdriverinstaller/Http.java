@@ -0,0 +1,142 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+
+/**
+ * minimal HTTP GET helper shared by listing fetches and archive downloads
+ */
+final class Http {
+    /**
+     * environment variable to specify connect timeout in milliseconds
+     */
+    static final String CONNECT_TIMEOUT_ENV_NAME = "WEBDRIVER_INSTALLER_CONNECT_TIMEOUT";
+    /**
+     * system property to specify connect timeout in milliseconds
+     */
+    static final String CONNECT_TIMEOUT_PROPERTY_NAME = "webdriverinstaller.connect.timeout";
+    /**
+     * environment variable to specify read timeout in milliseconds
+     */
+    static final String READ_TIMEOUT_ENV_NAME = "WEBDRIVER_INSTALLER_READ_TIMEOUT";
+    /**
+     * system property to specify read timeout in milliseconds
+     */
+    static final String READ_TIMEOUT_PROPERTY_NAME = "webdriverinstaller.read.timeout";
+
+    private Http() {
+    }
+
+    /**
+     * Sends a GET request. Non-HTTP urls such as file: are also accepted; they respond 200, or 404 if not found.
+     *
+     * @param url            url to fetch
+     * @param requestHeaders additional request headers
+     * @return response. the caller is responsible for closing it
+     * @throws IOException when failed to connect
+     */
+    @NotNull
+    static Response get(String url, Map<String, String> requestHeaders) throws IOException {
+        final URLConnection con = new URL(url).openConnection();
+        con.setConnectTimeout((int) WebDriverInstaller.getConfigLong(CONNECT_TIMEOUT_ENV_NAME, CONNECT_TIMEOUT_PROPERTY_NAME, 5000));
+        con.setReadTimeout((int) WebDriverInstaller.getConfigLong(READ_TIMEOUT_ENV_NAME, READ_TIMEOUT_PROPERTY_NAME, 30000));
+        for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
+            con.setRequestProperty(entry.getKey(), entry.getValue());
+        }
+        try {
+            return new Response(con);
+        } catch (IOException ioe) {
+            if (con instanceof HttpURLConnection) {
+                ((HttpURLConnection) con).disconnect();
+            }
+            throw ioe;
+        }
+    }
+
+    /**
+     * Sends a GET request for a listing or metadata, whose response may be compressed in transit.
+     * URLConnection doesn't decode compressed responses, so this is the same as {@link #get(String, Map)} in this variant.
+     *
+     * @param url            url to fetch
+     * @param requestHeaders additional request headers
+     * @return response. the caller is responsible for closing it
+     * @throws IOException when failed to connect
+     */
+    @NotNull
+    static Response getCompressible(String url, Map<String, String> requestHeaders) throws IOException {
+        return get(url, requestHeaders);
+    }
+
+    static final class Response implements Closeable {
+        private final URLConnection con;
+        private final int code;
+        @Nullable
+        private InputStream body;
+
+        private Response(URLConnection con) throws IOException {
+            this.con = con;
+            if (con instanceof HttpURLConnection) {
+                this.code = ((HttpURLConnection) con).getResponseCode();
+            } else {
+                int code;
+                try {
+                    body = con.getInputStream();
+                    code = 200;
+                } catch (FileNotFoundException e) {
+                    code = 404;
+                }
+                this.code = code;
+            }
+        }
+
+        int code() {
+            return code;
+        }
+
+        @Nullable
+        String header(String name) {
+            return con.getHeaderField(name);
+        }
+
+        @NotNull
+        InputStream body() throws IOException {
+            if (body == null) {
+                body = con.getInputStream();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (con instanceof HttpURLConnection) {
+                ((HttpURLConnection) con).disconnect();
+            } else if (body != null) {
+                body.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * driver archives served over HTTP, either by the upstream site or by a mirror of it
+ */
+final class HttpDriverRepository implements DriverRepository {
+    private final static Logger logger = Logger.getLogger();
+    private final String baseURL;
+    @Nullable
+    private final String listingURL;
+    @Nullable
+    private final ListingParser parser;
+
+    HttpDriverRepository(String baseURL, @Nullable String listingURL, @Nullable ListingParser parser) {
+        this.baseURL = baseURL;
+        this.listingURL = listingURL;
+        this.parser = parser;
+    }
+
+    @NotNull
+    @Override
+    public String getArchiveURL(String version, String fileName) {
+        return baseURL + "/" + version + "/" + fileName;
+    }
+
+    /**
+     * Lists available versions. The cached listing is used as is within TTL, and revalidated with a conditional GET afterwards.
+     * The stale listing is used when the repository is unreachable.
+     */
+    @NotNull
+    @Override
+    public List<String> listVersions(@Nullable ListingCache listingCache, long ttlMillis) throws IOException {
+        if (listingURL == null || parser == null) {
+            throw new IOException("Version listing is not available from " + baseURL);
+        }
+        final RetryPolicy retryPolicy = RetryPolicy.fromConfig();
+        if (listingCache == null) {
+            return retryPolicy.execute("fetch " + listingURL, () -> {
+                try (Http.Response response = retryPolicy.hedge(() -> Http.getCompressible(listingURL, Collections.emptyMap()))) {
+                    if (response.code() != 200) {
+                        throw new HttpStatusException(listingURL, response.code());
+                    }
+                    return parser.parse(response.body());
+                }
+            });
+        }
+        // the cache may hold the listing of the repository configured before
+        final ListingCache cache = listingCache.forSource(listingURL);
+        if (cache.isFresh(ttlMillis)) {
+            logger.debug(() -> "Using cached version listing of " + listingURL);
+            return cache.serve();
+        }
+        Map<String, String> headers = new HashMap<>();
+        if (!cache.isEmpty()) {
+            if (cache.getEtag() != null) {
+                headers.put("If-None-Match", cache.getEtag());
+            }
+            if (cache.getLastModified() != null) {
+                headers.put("If-Modified-Since", cache.getLastModified());
+            }
+        }
+        try {
+            return retryPolicy.execute("fetch " + listingURL, () -> {
+                try (Http.Response response = retryPolicy.hedge(() -> Http.getCompressible(listingURL, headers))) {
+                    if (response.code() == 304) {
+                        logger.debug(() -> "Version listing not modified: " + listingURL);
+                        cache.revalidated();
+                        return cache.serve();
+                    }
+                    if (response.code() != 200) {
+                        throw new HttpStatusException(listingURL, response.code());
+                    }
+                    List<String> versions = parser.parse(response.body());
+                    cache.update(versions, response.header("ETag"), response.header("Last-Modified"));
+                    return versions;
+                }
+            });
+        } catch (IOException e) {
+            if (!cache.isEmpty()) {
+                logger.warn(() -> "Failed to refresh version listing, using the stale one: " + e.getMessage());
+                return cache.serve();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return baseURL;
+    }
+}
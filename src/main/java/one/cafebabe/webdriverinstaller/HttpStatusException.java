@@ -0,0 +1,35 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import java.io.IOException;
+
+/**
+ * thrown when a server responds with an unexpected status code
+ */
+final class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final int statusCode;
+
+    HttpStatusException(String url, int statusCode) {
+        super("URL[" + url + "] returns code [" + statusCode + "].");
+        this.statusCode = statusCode;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+}
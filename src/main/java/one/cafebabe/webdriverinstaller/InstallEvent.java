@@ -0,0 +1,129 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+
+/**
+ * an installation phase finished
+ */
+public final class InstallEvent {
+    /**
+     * installation phases, in the order they happen
+     */
+    public enum Phase {
+        /**
+         * locating the browser and reading its version
+         */
+        PROBE,
+        /**
+         * resolving the driver version suitable to the browser
+         */
+        RESOLVE,
+        /**
+         * downloading the driver archive
+         */
+        DOWNLOAD,
+        /**
+         * extracting the driver archive
+         */
+        DECOMPRESS,
+        /**
+         * the whole installation, from probing to publishing the driver
+         */
+        INSTALL
+    }
+
+    private final Phase phase;
+    private final String driverName;
+    @Nullable
+    private final String version;
+    private final Duration duration;
+    private final long bytes;
+    private final boolean cacheHit;
+    private final boolean success;
+
+    InstallEvent(Phase phase, String driverName, @Nullable String version, long durationNanos, long bytes, boolean cacheHit, boolean success) {
+        this.phase = phase;
+        this.driverName = driverName;
+        this.version = version;
+        this.duration = Duration.ofNanos(durationNanos);
+        this.bytes = bytes;
+        this.cacheHit = cacheHit;
+        this.success = success;
+    }
+
+    @NotNull
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return driver name, e.g. chromedriver
+     */
+    @NotNull
+    public String getDriverName() {
+        return driverName;
+    }
+
+    /**
+     * @return browser version for {@link Phase#PROBE}, driver version for the other phases, or null if not known because the phase failed
+     */
+    @Nullable
+    public String getVersion() {
+        return version;
+    }
+
+    @NotNull
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return bytes downloaded for {@link Phase#DOWNLOAD}, bytes extracted for {@link Phase#DECOMPRESS}, 0 otherwise
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true if the phase was served from a cache: the probe cache for {@link Phase#PROBE}, the version listing or table kept in the install root for {@link Phase#RESOLVE},
+     * the driver store for {@link Phase#DOWNLOAD}, or the driver already installed for {@link Phase#INSTALL}
+     */
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    @Override
+    public String toString() {
+        return "InstallEvent{" +
+                "phase=" + phase +
+                ", driverName='" + driverName + '\'' +
+                ", version='" + version + '\'' +
+                ", duration=" + duration +
+                ", bytes=" + bytes +
+                ", cacheHit=" + cacheHit +
+                ", success=" + success +
+                '}';
+    }
+}
@@ -0,0 +1,34 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * receives structured events of each installation phase, e.g. to export timings to a metrics system.
+ * Listeners are registered with {@link WebDriverInstaller#addInstallListener(InstallListener)},
+ * or discovered with {@link java.util.ServiceLoader} from META-INF/services/one.cafebabe.webdriverinstaller.InstallListener.
+ * Events are delivered synchronously on the installing thread, so listeners should return quickly. Exceptions thrown by listeners are logged and ignored.
+ */
+@FunctionalInterface
+public interface InstallListener {
+    /**
+     * Called when an installation phase finished, successfully or not.
+     *
+     * @param event event
+     */
+    void onEvent(@NotNull InstallEvent event);
+}
@@ -0,0 +1,104 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * listeners registered programmatically, followed by those discovered with ServiceLoader
+ */
+final class InstallListeners {
+    private final static Logger logger = Logger.getLogger();
+    private static final List<InstallListener> REGISTERED = new CopyOnWriteArrayList<>();
+    /**
+     * true while the current thread installs on behalf of another JVM
+     */
+    private static final ThreadLocal<Boolean> MUTED = ThreadLocal.withInitial(() -> false);
+
+    private InstallListeners() {
+    }
+
+    /**
+     * loaded on first use so that the service lookup is not paid unless events are fired
+     */
+    private static final class ServiceLoaderHolder {
+        private static final List<InstallListener> DISCOVERED = new CopyOnWriteArrayList<>();
+
+        static {
+            try {
+                for (InstallListener listener : ServiceLoader.load(InstallListener.class, InstallListener.class.getClassLoader())) {
+                    DISCOVERED.add(listener);
+                }
+            } catch (ServiceConfigurationError e) {
+                logger.warn(() -> "Failed to load InstallListener: " + e.getMessage());
+            }
+        }
+    }
+
+    static void add(InstallListener listener) {
+        REGISTERED.add(listener);
+    }
+
+    static void remove(InstallListener listener) {
+        REGISTERED.remove(listener);
+    }
+
+    /**
+     * Runs the action without notifying listeners of events fired by the current thread.
+     *
+     * @param action action to run
+     * @param <T>    type of the result
+     * @return result of the action
+     */
+    static <T> T muted(Supplier<T> action) {
+        final boolean muted = MUTED.get();
+        MUTED.set(true);
+        try {
+            return action.get();
+        } finally {
+            MUTED.set(muted);
+        }
+    }
+
+    static void fire(InstallEvent.Phase phase, String driverName, @Nullable String version, long startNanos, long bytes, boolean cacheHit, boolean success) {
+        final List<InstallListener> discovered = ServiceLoaderHolder.DISCOVERED;
+        if ((REGISTERED.isEmpty() && discovered.isEmpty()) || MUTED.get()) {
+            return;
+        }
+        final InstallEvent event = new InstallEvent(phase, driverName, version, System.nanoTime() - startNanos, bytes, cacheHit, success);
+        logger.debug(event::toString);
+        for (InstallListener listener : REGISTERED) {
+            notify(listener, event);
+        }
+        for (InstallListener listener : discovered) {
+            notify(listener, event);
+        }
+    }
+
+    private static void notify(InstallListener listener, InstallEvent event) {
+        try {
+            listener.onEvent(event);
+        } catch (RuntimeException e) {
+            logger.warn(() -> "InstallListener " + listener + " failed: " + e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * exclusive lock on a file, held across threads and processes.
+ * File locks are held on behalf of the whole JVM, so threads in the same JVM are serialized with a ReentrantLock first.
+ */
+final class InstallLock implements Closeable {
+    private final static Logger logger = Logger.getLogger();
+    private static final ConcurrentMap<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    private final ReentrantLock localLock;
+    private final FileChannel channel;
+    private final FileLock fileLock;
+
+    private InstallLock(ReentrantLock localLock, FileChannel channel, FileLock fileLock) {
+        this.localLock = localLock;
+        this.channel = channel;
+        this.fileLock = fileLock;
+    }
+
+    /**
+     * Acquires the lock, waiting for other threads or processes holding it.
+     *
+     * @param lockFile lock file. created if it doesn't exist
+     * @return acquired lock
+     * @throws IOException when failed to lock the file
+     */
+    @NotNull
+    static InstallLock acquire(Path lockFile) throws IOException {
+        final Path path = lockFile.toAbsolutePath().normalize();
+        final ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(path, p -> new ReentrantLock());
+        localLock.lock();
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock fileLock = channel.tryLock();
+            if (fileLock == null) {
+                logger.info(() -> "Waiting for another process to release " + path);
+                fileLock = channel.lock();
+            }
+            return new InstallLock(localLock, channel, fileLock);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            localLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Acquires the lock only if no other thread or process holds it.
+     *
+     * @param lockFile lock file. created if it doesn't exist
+     * @return acquired lock, or null if the lock is held
+     * @throws IOException when failed to lock the file
+     */
+    @Nullable
+    static InstallLock tryAcquire(Path lockFile) throws IOException {
+        final Path path = lockFile.toAbsolutePath().normalize();
+        final ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(path, p -> new ReentrantLock());
+        if (!localLock.tryLock()) {
+            return null;
+        }
+        if (1 < localLock.getHoldCount()) {
+            // held by this thread, the file lock can't be taken twice
+            localLock.unlock();
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            final FileLock fileLock = channel.tryLock();
+            if (fileLock != null) {
+                return new InstallLock(localLock, channel, fileLock);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            localLock.unlock();
+            throw e;
+        }
+        channel.close();
+        localLock.unlock();
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            try {
+                fileLock.release();
+            } finally {
+                channel.close();
+            }
+        } finally {
+            localLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * drivers resolved in this JVM, keyed by driver name and install root.
+ * Concurrent callers for the same key share one resolution. Only a resolution which produced an existing binary is remembered, so failures are retried.
+ * A remembered binary deleted since, e.g. by InstallRootCleaner of another JVM, is resolved again.
+ */
+final class InstallRegistry {
+    private static final ConcurrentMap<String, CompletableFuture<Optional<String>>> RESOLVED = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, CompletableFuture<Optional<String>>> RESOLVING = new ConcurrentHashMap<>();
+
+    private InstallRegistry() {
+    }
+
+    /**
+     * Returns the driver resolved before, or resolves it with the installer.
+     *
+     * @param driverName  driver name
+     * @param installRoot install root
+     * @param installer   resolves and installs the driver
+     * @return absolute path to the driver binary
+     */
+    @NotNull
+    static Optional<String> resolve(String driverName, String installRoot, Supplier<Optional<String>> installer) {
+        return resolve(RESOLVED, key(driverName, installRoot), installer, true);
+    }
+
+    /**
+     * Resolves the driver with the installer, sharing the resolution with concurrent callers for the same key.
+     * Nothing is remembered once it completes, so that a long-lived process picks up browser updates. The caches on disk make repeated resolutions cheap.
+     *
+     * @param driverName  driver name
+     * @param installRoot install root
+     * @param installer   resolves and installs the driver
+     * @return absolute path to the driver binary
+     */
+    @NotNull
+    static Optional<String> resolveShared(String driverName, String installRoot, Supplier<Optional<String>> installer) {
+        return resolve(RESOLVING, key(driverName, installRoot), installer, false);
+    }
+
+    private static String key(String driverName, String installRoot) {
+        return driverName + "|" + Paths.get(installRoot).toAbsolutePath().normalize();
+    }
+
+    private static Optional<String> resolve(ConcurrentMap<String, CompletableFuture<Optional<String>>> futures, String key,
+                                            Supplier<Optional<String>> installer, boolean remember) {
+        CompletableFuture<Optional<String>> resolved = futures.get(key);
+        if (resolved != null && isDeleted(resolved)) {
+            futures.remove(key, resolved);
+            resolved = null;
+        }
+        if (resolved == null) {
+            final CompletableFuture<Optional<String>> resolving = new CompletableFuture<>();
+            resolved = futures.putIfAbsent(key, resolving);
+            if (resolved == null) {
+                return resolve(futures, key, resolving, installer, remember);
+            }
+        }
+        try {
+            return resolved.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static Optional<String> resolve(ConcurrentMap<String, CompletableFuture<Optional<String>>> futures, String key,
+                                            CompletableFuture<Optional<String>> resolving, Supplier<Optional<String>> installer, boolean remember) {
+        final Optional<String> path;
+        try {
+            path = installer.get();
+        } catch (RuntimeException | Error e) {
+            futures.remove(key, resolving);
+            resolving.completeExceptionally(e);
+            throw e;
+        }
+        if (!remember || !path.isPresent() || !Files.exists(Paths.get(path.get()))) {
+            futures.remove(key, resolving);
+        }
+        resolving.complete(path);
+        return path;
+    }
+
+    private static boolean isDeleted(CompletableFuture<Optional<String>> resolved) {
+        if (!resolved.isDone() || resolved.isCompletedExceptionally()) {
+            return false;
+        }
+        final Optional<String> path = resolved.join();
+        return path.isPresent() && !Files.exists(Paths.get(path.get()));
+    }
+
+    /**
+     * Forgets all resolved drivers. Subsequent calls probe the browser and resolve the driver again.
+     */
+    static void invalidate() {
+        RESOLVED.clear();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * evicts least recently used driver versions from an install root to keep it within count and size budgets.
+ * The modification time of a version directory is its last used time, updated by {@link #touch(Path)} whenever the version is resolved.
+ * Versions used within the grace period are kept, as other JVMs or earlier items of a batch may still be running them.
+ */
+final class InstallRootCleaner {
+    private final static Logger logger = Logger.getLogger();
+
+    /**
+     * environment variable to specify the maximum number of driver versions kept in the install root
+     */
+    static final String MAX_VERSIONS_ENV_NAME = "WEBDRIVER_INSTALLER_GC_MAX_VERSIONS";
+    /**
+     * system property to specify the maximum number of driver versions kept in the install root
+     */
+    static final String MAX_VERSIONS_PROPERTY_NAME = "webdriverinstaller.gc.max.versions";
+    /**
+     * environment variable to specify the maximum total size of driver versions kept in the install root, in megabytes
+     */
+    static final String MAX_SIZE_ENV_NAME = "WEBDRIVER_INSTALLER_GC_MAX_SIZE";
+    /**
+     * system property to specify the maximum total size of driver versions kept in the install root, in megabytes
+     */
+    static final String MAX_SIZE_PROPERTY_NAME = "webdriverinstaller.gc.max.size";
+    /**
+     * environment variable to specify seconds a used driver version is kept regardless of the budgets
+     */
+    static final String GRACE_PERIOD_ENV_NAME = "WEBDRIVER_INSTALLER_GC_GRACE_PERIOD";
+    /**
+     * system property to specify seconds a used driver version is kept regardless of the budgets
+     */
+    static final String GRACE_PERIOD_PROPERTY_NAME = "webdriverinstaller.gc.grace.period";
+    private static final long DEFAULT_GRACE_PERIOD = 3600;
+    /**
+     * environment variable to delete driver archives once extracted
+     */
+    static final String DELETE_ARCHIVE_ENV_NAME = "WEBDRIVER_INSTALLER_DELETE_ARCHIVE";
+    /**
+     * system property to delete driver archives once extracted
+     */
+    static final String DELETE_ARCHIVE_PROPERTY_NAME = "webdriverinstaller.delete.archive";
+
+    private final int maxVersions;
+    private final long maxBytes;
+    private final long gracePeriodMillis;
+
+    /**
+     * @param maxVersions       maximum number of versions to keep, or 0 for no limit
+     * @param maxBytes          maximum total size of versions to keep, or 0 for no limit
+     * @param gracePeriodMillis versions used within this period are kept regardless of the budgets
+     */
+    InstallRootCleaner(int maxVersions, long maxBytes, long gracePeriodMillis) {
+        this.maxVersions = maxVersions;
+        this.maxBytes = maxBytes;
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    @NotNull
+    static InstallRootCleaner fromConfig() {
+        return new InstallRootCleaner((int) WebDriverInstaller.getConfigLong(MAX_VERSIONS_ENV_NAME, MAX_VERSIONS_PROPERTY_NAME, 0),
+                WebDriverInstaller.getConfigLong(MAX_SIZE_ENV_NAME, MAX_SIZE_PROPERTY_NAME, 0) * 1024 * 1024,
+                getGracePeriodSeconds() * 1000);
+    }
+
+    /**
+     * @return seconds a used version is kept. the default is used when the configured value is not a number
+     */
+    static long getGracePeriodSeconds() {
+        return WebDriverInstaller.getConfigLong(GRACE_PERIOD_ENV_NAME, GRACE_PERIOD_PROPERTY_NAME, DEFAULT_GRACE_PERIOD);
+    }
+
+    static boolean isDeleteArchive() {
+        return Boolean.parseBoolean(WebDriverInstaller.getConfig(DELETE_ARCHIVE_ENV_NAME, DELETE_ARCHIVE_PROPERTY_NAME, "false"));
+    }
+
+    boolean isEnabled() {
+        return 0 < maxVersions || 0 < maxBytes;
+    }
+
+    /**
+     * Marks the version directory as used now.
+     *
+     * @param versionPath version directory
+     * @throws IOException when failed to update the modification time
+     */
+    static void touch(Path versionPath) throws IOException {
+        Files.setLastModifiedTime(versionPath, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * Evicts least recently used versions until the install root is within the budgets, and collects staging directories left by interrupted installs.
+     * The current version, versions used within the grace period and versions locked by other threads or processes are never evicted.
+     *
+     * @param installRoot    install root
+     * @param currentVersion version currently resolved
+     * @param binName        driver binary name. directories containing it are versions
+     * @return number of evicted versions
+     * @throws IOException when failed to list the install root
+     */
+    int clean(Path installRoot, String currentVersion, String binName) throws IOException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        final List<Version> versions = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(installRoot,
+                path -> Files.isDirectory(path) && Files.exists(path.resolve(binName)))) {
+            for (Path path : stream) {
+                versions.add(new Version(path, Files.getLastModifiedTime(path).toMillis(), size(path)));
+            }
+        }
+        final long now = System.currentTimeMillis();
+        int count = versions.size();
+        long totalBytes = versions.stream().mapToLong(version -> version.bytes).sum();
+        versions.sort(Comparator.comparingLong(version -> version.lastUsed));
+        int evicted = 0;
+        for (Version version : versions) {
+            if (!(0 < maxVersions && maxVersions < count) && !(0 < maxBytes && maxBytes < totalBytes)) {
+                break;
+            }
+            if (now - version.lastUsed < gracePeriodMillis) {
+                // the rest are used even more recently
+                logger.debug(() -> "Not evicting " + version.path + " as it's used within the grace period.");
+                break;
+            }
+            final String name = version.path.getFileName().toString();
+            if (name.equals(currentVersion)) {
+                continue;
+            }
+            try (InstallLock lock = InstallLock.tryAcquire(installRoot.resolve(name + ".lock"))) {
+                if (lock == null) {
+                    logger.debug(() -> "Not evicting " + version.path + " as it's locked.");
+                    continue;
+                }
+                WebDriverInstaller.deleteRecursively(version.path);
+            }
+            logger.info(() -> "Evicted least recently used driver: " + version.path);
+            count--;
+            totalBytes -= version.bytes;
+            evicted++;
+        }
+        collectLeftovers(installRoot);
+        return evicted;
+    }
+
+    /**
+     * Deletes &lt;version&gt;.tmp staging directories not being written.
+     * Lock files are kept, as a waiter on a deleted lock file would not exclude one locking a new file at the same path.
+     */
+    private void collectLeftovers(Path installRoot) throws IOException {
+        final List<Path> leftovers = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(installRoot, path -> Files.isDirectory(path) && path.getFileName().toString().endsWith(".tmp"))) {
+            stream.forEach(leftovers::add);
+        }
+        for (Path leftover : leftovers) {
+            final String fileName = leftover.getFileName().toString();
+            final String name = fileName.substring(0, fileName.length() - ".tmp".length());
+            // staging directories are written while holding the lock
+            try (InstallLock lock = InstallLock.tryAcquire(installRoot.resolve(name + ".lock"))) {
+                if (lock == null) {
+                    continue;
+                }
+                WebDriverInstaller.deleteRecursively(leftover);
+            }
+            logger.debug(() -> "Deleted leftover of an interrupted install: " + leftover);
+        }
+    }
+
+    private static long size(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            long size = 0;
+            for (Path file : (Iterable<Path>) paths::iterator) {
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    size += attributes.size();
+                }
+            }
+            return size;
+        }
+    }
+
+    private static final class Version {
+        private final Path path;
+        private final long lastUsed;
+        private final long bytes;
+
+        private Version(Path path, long lastUsed, long bytes) {
+            this.path = path;
+            this.lastUsed = lastUsed;
+            this.bytes = bytes;
+        }
+    }
+}
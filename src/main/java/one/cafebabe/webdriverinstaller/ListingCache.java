@@ -0,0 +1,188 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * version listing persisted on disk along with the url and the validators (ETag / Last-Modified) of the response it came from
+ */
+final class ListingCache {
+    private final static Logger logger = Logger.getLogger();
+    private final Path file;
+    @Nullable
+    private String source;
+    private List<String> versions = Collections.emptyList();
+    @Nullable
+    private String etag;
+    @Nullable
+    private String lastModified;
+    private long fetchedAt;
+    private boolean served;
+
+    private ListingCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the cache from the specified file. Returns an empty cache if the file doesn't exist or is unreadable.
+     *
+     * @param file cache file
+     * @return cache
+     */
+    @NotNull
+    static ListingCache load(Path file) {
+        ListingCache cache = new ListingCache(file);
+        if (Files.exists(file)) {
+            Properties p = new Properties();
+            try (InputStream is = Files.newInputStream(file)) {
+                p.load(is);
+                String versions = p.getProperty("versions", "");
+                cache.source = p.getProperty("source");
+                cache.versions = versions.isEmpty() ? Collections.emptyList() : Arrays.asList(versions.split(","));
+                cache.etag = p.getProperty("etag");
+                cache.lastModified = p.getProperty("last-modified");
+                cache.fetchedAt = Long.parseLong(p.getProperty("fetched-at", "0"));
+            } catch (IOException | NumberFormatException e) {
+                logger.warn(() -> "Ignoring broken listing cache: " + file);
+                cache = new ListingCache(file);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the cache for the listing fetched from the url. The listing of another repository is never used, nor revalidated against the url.
+     *
+     * @param source url the listing is fetched from
+     * @return this cache if the listing was fetched from the url, or an empty cache replacing it otherwise
+     */
+    @NotNull
+    ListingCache forSource(String source) {
+        if (source.equals(this.source)) {
+            return this;
+        }
+        if (!isEmpty()) {
+            logger.debug(() -> "Discarding version listing of " + this.source + " cached in " + file);
+        }
+        final ListingCache cache = new ListingCache(file);
+        cache.source = source;
+        return cache;
+    }
+
+    @Nullable
+    String getSource() {
+        return source;
+    }
+
+    boolean isEmpty() {
+        return versions.isEmpty();
+    }
+
+    /**
+     * @param ttlMillis time to live in milliseconds
+     * @return true if the cached listing can be used without revalidation
+     */
+    boolean isFresh(long ttlMillis) {
+        return !isEmpty() && System.currentTimeMillis() - fetchedAt < ttlMillis;
+    }
+
+    @NotNull
+    List<String> getVersions() {
+        return versions;
+    }
+
+    /**
+     * Returns the cached listing in place of fetching it.
+     *
+     * @return cached versions
+     */
+    @NotNull
+    List<String> serve() {
+        served = true;
+        return versions;
+    }
+
+    /**
+     * @return true if the cached listing was served in place of a fetched one
+     */
+    boolean isServed() {
+        return served;
+    }
+
+    @Nullable
+    String getEtag() {
+        return etag;
+    }
+
+    @Nullable
+    String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Marks the cached listing as revalidated (the server responded 304 Not Modified).
+     *
+     * @throws IOException when failed to write the cache file
+     */
+    void revalidated() throws IOException {
+        fetchedAt = System.currentTimeMillis();
+        save();
+    }
+
+    /**
+     * Replaces the cached listing.
+     *
+     * @param versions     versions
+     * @param etag         ETag of the response, if any
+     * @param lastModified Last-Modified of the response, if any
+     * @throws IOException when failed to write the cache file
+     */
+    void update(List<String> versions, @Nullable String etag, @Nullable String lastModified) throws IOException {
+        this.versions = new ArrayList<>(versions);
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fetchedAt = System.currentTimeMillis();
+        save();
+    }
+
+    private void save() throws IOException {
+        Properties p = new Properties();
+        if (source != null) {
+            p.setProperty("source", source);
+        }
+        p.setProperty("versions", String.join(",", versions));
+        if (etag != null) {
+            p.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            p.setProperty("last-modified", lastModified);
+        }
+        p.setProperty("fetched-at", String.valueOf(fetchedAt));
+        WebDriverInstaller.storeProperties(p, file, "chromedriver version listing");
+    }
+}
@@ -0,0 +1,157 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * downloads driver archives for other platforms into a cache partitioned by OS, e.g. to build one artifact cache for Linux, macOS and Windows agents.
+ * Archives are stored at &lt;cache&gt;/&lt;os&gt;/&lt;version&gt;/&lt;file name&gt;, so &lt;cache&gt;/&lt;os&gt; can be used as CHROME_DRIVER_REPOSITORY / GECKO_DRIVER_REPOSITORY on agents of the OS.
+ * <pre>
+ * java -cp webdriver-installer.jar:commons-compress.jar one.cafebabe.webdriverinstaller.Prefetcher &lt;chrome|firefox&gt; &lt;browser version&gt; &lt;os,os,...&gt; &lt;cache&gt;
+ * </pre>
+ * OS is one of linux32, linux64, mac, windows32 and windows64.
+ */
+final class Prefetcher {
+    private final static Logger logger = Logger.getLogger();
+
+    public static void main(String... args) throws IOException {
+        if (args.length != 4) {
+            usage(null);
+        }
+        final WebDriverInstaller installer;
+        switch (args[0]) {
+            case "chrome":
+            case "chromedriver":
+                installer = new ChromeDriverInstaller();
+                break;
+            case "firefox":
+            case "geckodriver":
+                installer = new GeckodriverInstaller();
+                break;
+            default:
+                usage("Unknown browser: " + args[0]);
+                return;
+        }
+        final Set<WebDriverInstaller.OS> targets = EnumSet.noneOf(WebDriverInstaller.OS.class);
+        for (String os : args[2].split(",")) {
+            try {
+                targets.add(WebDriverInstaller.OS.valueOf(os.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                usage("Unknown OS: " + os);
+            }
+        }
+        if (targets.contains(WebDriverInstaller.OS.UNKNOWN)) {
+            usage("Unknown OS: unknown");
+        }
+        final Path cache = Paths.get(args[3]);
+        final String driverVersion = installer.getSuitableDriverVersion(cache, args[1]);
+        for (Path archive : prefetch(installer, driverVersion, targets, cache, 4)) {
+            System.out.println(archive);
+        }
+    }
+
+    private static void usage(@Nullable String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("usage: Prefetcher <chrome|firefox> <browser version> <os,os,...> <cache>");
+        System.err.println("OS is one of linux32, linux64, mac, windows32 and windows64.");
+        System.exit(2);
+    }
+
+    /**
+     * Downloads the driver archives of the version for each target OS concurrently. Archives already in the cache are not downloaded again.
+     *
+     * @param installer     installer of the driver
+     * @param driverVersion driver version
+     * @param targets       target OSes
+     * @param cache         cache directory
+     * @param parallelism   maximum number of concurrent downloads
+     * @return paths to the archives
+     * @throws IOException when failed to download any of the archives
+     */
+    @NotNull
+    static List<Path> prefetch(WebDriverInstaller installer, String driverVersion, Set<WebDriverInstaller.OS> targets, Path cache, int parallelism) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, "webdriver-installer-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<CompletableFuture<Path>> futures = new ArrayList<>();
+            for (WebDriverInstaller.OS os : targets) {
+                if (os == WebDriverInstaller.OS.UNKNOWN) {
+                    throw new IllegalArgumentException("Unknown OS can't be prefetched");
+                }
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return prefetch(installer, driverVersion, os, cache);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+            final List<Path> archives = new ArrayList<>();
+            for (CompletableFuture<Path> future : futures) {
+                archives.add(future.join());
+            }
+            return archives;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Path prefetch(WebDriverInstaller installer, String driverVersion, WebDriverInstaller.OS os, Path cache) throws IOException {
+        final String fileName = installer.toFileName(driverVersion, os);
+        // <cache>/linux64/88.0.4324.96/chromedriver_linux64.zip
+        final Path archive = cache.resolve(os.name().toLowerCase(Locale.ROOT)).resolve(driverVersion).resolve(fileName);
+        final Path sha256Path = archive.resolveSibling(fileName + ".sha256");
+        if (Files.exists(archive) && Files.exists(sha256Path)) {
+            logger.debug(() -> "Already prefetched: " + archive);
+            return archive;
+        }
+        final String downloadURL = installer.getDownloadURL(driverVersion, fileName);
+        final String expectedSha256 = WebDriverInstaller.resolveExpectedSha256(installer.getChecksumConfig(), driverVersion, fileName);
+        final String sha256 = RetryPolicy.fromConfig().execute("download " + downloadURL,
+                () -> Downloader.download(downloadURL, archive, expectedSha256));
+        Files.write(sha256Path, (sha256 + "  " + fileName + "\n").getBytes(StandardCharsets.UTF_8));
+        logger.info(() -> "Prefetched " + downloadURL + " to " + archive);
+        return archive;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+
+/**
+ * browser paths and versions probed before.
+ * A version is keyed on the real path of the browser binary, along with its size and modification time so that an upgrade invalidates it.
+ * The app found on the path is often a launcher script or a shim (e.g. /usr/bin/google-chrome, /snap/bin/firefox) which doesn't change on upgrade, so a version is also probed again after the max age.
+ */
+final class ProbeCache {
+    private final static Logger logger = Logger.getLogger();
+
+    /**
+     * file name of the probe cache in the install root
+     */
+    static final String FILE_NAME = "browser-probe.properties";
+
+    /**
+     * environment variable to specify how long a probed browser version is used, in seconds
+     */
+    static final String MAX_AGE_ENV_NAME = "WEBDRIVER_INSTALLER_PROBE_MAX_AGE";
+    /**
+     * system property to specify how long a probed browser version is used, in seconds
+     */
+    static final String MAX_AGE_PROPERTY_NAME = "webdriverinstaller.probe.max.age";
+    private static final long DEFAULT_MAX_AGE = 3600;
+
+    private final Path file;
+    private final Properties properties;
+    private final long maxAgeMillis;
+
+    private ProbeCache(Path file, Properties properties, long maxAgeMillis) {
+        this.file = file;
+        this.properties = properties;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Loads the cache from the specified file, with the max age specified by WEBDRIVER_INSTALLER_PROBE_MAX_AGE environment variable or webdriverinstaller.probe.max.age system property.
+     *
+     * @param file cache file
+     * @return cache
+     */
+    @NotNull
+    static ProbeCache load(Path file) {
+        return load(file, WebDriverInstaller.getConfigLong(MAX_AGE_ENV_NAME, MAX_AGE_PROPERTY_NAME, DEFAULT_MAX_AGE) * 1000);
+    }
+
+    /**
+     * Loads the cache from the specified file. Returns an empty cache if the file doesn't exist or is unreadable.
+     *
+     * @param file         cache file
+     * @param maxAgeMillis how long a probed version is used, in milliseconds
+     * @return cache
+     */
+    @NotNull
+    static ProbeCache load(Path file, long maxAgeMillis) {
+        Properties p = new Properties();
+        if (Files.exists(file)) {
+            try (InputStream is = Files.newInputStream(file)) {
+                p.load(is);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.warn(() -> "Ignoring broken probe cache: " + file);
+                p.clear();
+            }
+        }
+        return new ProbeCache(file, p, maxAgeMillis);
+    }
+
+    /**
+     * @param name app name, e.g. google-chrome
+     * @return previously resolved path of the app if it still exists, or null
+     */
+    @Nullable
+    String getAppPath(String name) {
+        final String path = properties.getProperty("path." + name);
+        return path != null && Files.exists(Paths.get(path)) ? path : null;
+    }
+
+    void putAppPath(String name, String path) {
+        properties.setProperty("path." + name, path);
+    }
+
+    /**
+     * @param appPath path to the app
+     * @return cached version if the app binary hasn't changed since and the version is not older than the max age, or null
+     */
+    @Nullable
+    String getVersion(String appPath) {
+        final String key = key(appPath);
+        if (key == null || !key.equals(properties.getProperty("key." + appPath))) {
+            return null;
+        }
+        final long probedAt;
+        try {
+            probedAt = Long.parseLong(properties.getProperty("probed-at." + appPath, "0"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return System.currentTimeMillis() - probedAt < maxAgeMillis ? properties.getProperty("version." + appPath) : null;
+    }
+
+    void putVersion(String appPath, String version) {
+        final String key = key(appPath);
+        if (key != null) {
+            properties.setProperty("key." + appPath, key);
+            properties.setProperty("version." + appPath, version);
+            properties.setProperty("probed-at." + appPath, String.valueOf(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Writes the cache. Failures are logged and ignored as the cache is only an optimization.
+     */
+    void save() {
+        try {
+            WebDriverInstaller.storeProperties(properties, file, "browser probe cache");
+        } catch (IOException e) {
+            logger.warn(() -> "Failed to write probe cache: " + file + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param appPath path to the app
+     * @return real path, size and modification time of the app binary, or null if unavailable
+     */
+    @Nullable
+    private static String key(String appPath) {
+        try {
+            final Path realPath = Paths.get(appPath).toRealPath();
+            final BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+            return realPath + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * loopback HTTP service resolving drivers on behalf of other JVMs on the host, so that they don't all probe the browser and race to download.
+ * The first JVM taking the lock file in the daemon directory serves requests until it exits, and publishes its port and a secret token next to the lock.
+ * Other JVMs send one request instead of installing, and install in-process as before when no daemon answers.
+ * Whoever can write the port file decides which binary the JVMs run, so the directory must be private to the user, and is ignored otherwise.
+ * It can also run standalone:
+ * <pre>
+ * java -cp webdriver-installer.jar:commons-compress.jar one.cafebabe.webdriverinstaller.ResolutionDaemon [daemon directory]
+ * </pre>
+ */
+final class ResolutionDaemon {
+    private final static Logger logger = Logger.getLogger();
+
+    /**
+     * environment variable to enable the daemon mode
+     */
+    static final String ENABLED_ENV_NAME = "WEBDRIVER_INSTALLER_DAEMON";
+    /**
+     * system property to enable the daemon mode
+     */
+    static final String ENABLED_PROPERTY_NAME = "webdriverinstaller.daemon";
+    /**
+     * environment variable to specify the directory of the lock file and the port file
+     */
+    static final String DIR_ENV_NAME = "WEBDRIVER_INSTALLER_DAEMON_DIR";
+    /**
+     * system property to specify the directory of the lock file and the port file
+     */
+    static final String DIR_PROPERTY_NAME = "webdriverinstaller.daemon.dir";
+
+    /**
+     * file name of the port and the token of the running daemon
+     */
+    static final String FILE_NAME = "daemon.properties";
+    /**
+     * file name of the lock held by the running daemon
+     */
+    static final String LOCK_FILE_NAME = "daemon.lock";
+    private static final String TOKEN_HEADER = "X-Webdriver-Installer-Token";
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    /**
+     * the daemon may be downloading a driver
+     */
+    private static final int READ_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * daemon started in this JVM, if any
+     */
+    @Nullable
+    private static volatile ResolutionDaemon started;
+
+    private final InstallLock lock;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Path file;
+    private final String token;
+    private final Function<String, WebDriverInstaller> installers;
+
+    private ResolutionDaemon(InstallLock lock, HttpServer server, ExecutorService executor, Path file, String token,
+                             Function<String, WebDriverInstaller> installers) {
+        this.lock = lock;
+        this.server = server;
+        this.executor = executor;
+        this.file = file;
+        this.token = token;
+        this.installers = installers;
+    }
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        final Path directory = 0 < args.length ? Paths.get(args[0]) : getDirectory();
+        final ResolutionDaemon daemon = start(directory, ResolutionDaemon::newInstaller);
+        if (daemon == null) {
+            System.err.println("Another daemon is running in " + directory);
+            System.exit(1);
+        }
+        System.out.println("Resolving drivers at http://" + daemon.server.getAddress().getHostString() + ":" + daemon.server.getAddress().getPort() + "/");
+        new CountDownLatch(1).await();
+    }
+
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(WebDriverInstaller.getConfig(ENABLED_ENV_NAME, ENABLED_PROPERTY_NAME, "false"));
+    }
+
+    /**
+     * @return daemon directory specified by WEBDRIVER_INSTALLER_DAEMON_DIR environment variable, webdriverinstaller.daemon.dir system property, or webdriver-installer-daemon in the user home
+     */
+    @NotNull
+    static Path getDirectory() {
+        return Paths.get(WebDriverInstaller.getConfig(DIR_ENV_NAME, DIR_PROPERTY_NAME,
+                System.getProperty("user.home") + File.separator + "webdriver-installer-daemon"));
+    }
+
+    /**
+     * Creates the daemon directory accessible only by the owner where the file system supports it.
+     *
+     * @param directory daemon directory
+     * @throws IOException when failed to create the directory, or an existing one is not private
+     */
+    private static void createPrivateDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory.toAbsolutePath().getParent());
+            try {
+                if (isPosix(directory)) {
+                    Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectory(directory);
+                }
+            } catch (FileAlreadyExistsException ignore) {
+                // created by another process meanwhile, checked below
+            }
+        }
+        checkPrivate(directory);
+    }
+
+    /**
+     * Checks that the file is owned by the current user and not writable by others. Where POSIX attributes are not supported,
+     * the default directory in the user home is protected by the ACL of the home directory.
+     *
+     * @param path daemon directory or port file
+     * @throws IOException when the file is owned by another user or writable by others
+     */
+    static void checkPrivate(Path path) throws IOException {
+        if (!isPosix(path)) {
+            return;
+        }
+        final PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class);
+        final UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+        if (!attributes.owner().equals(user)) {
+            throw new IOException(path + " is owned by " + attributes.owner().getName() + ", not by " + user.getName() + ".");
+        }
+        if (attributes.permissions().contains(PosixFilePermission.GROUP_WRITE) || attributes.permissions().contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException(path + " is writable by other users: " + PosixFilePermissions.toString(attributes.permissions()));
+        }
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    /**
+     * Ensures the driver is installed, through the daemon when the daemon mode is enabled.
+     * Becomes the daemon if none is running, and installs in-process if the daemon doesn't answer.
+     *
+     * @param installer   installer of the driver
+     * @param installRoot directory to be installed
+     * @return path to the driver binary
+     */
+    @NotNull
+    static Optional<String> ensureInstalled(WebDriverInstaller installer, String installRoot) {
+        if (!isEnabled() || started != null) {
+            return installer.ensureInstalled(installRoot);
+        }
+        final Path directory = getDirectory();
+        final long installStart = System.nanoTime();
+        final Optional<String> resolved = request(directory, installer.getDriverName(), installRoot);
+        if (resolved != null) {
+            resolved.ifPresent(path -> System.setProperty(installer.getSystemPropertyName(), path));
+            // the daemon installs without notifying its own listeners. nothing was installed by this JVM, so it counts as a cache hit
+            InstallListeners.fire(InstallEvent.Phase.INSTALL, installer.getDriverName(), resolved.map(ResolutionDaemon::versionOf).orElse(null),
+                    installStart, 0, resolved.isPresent(), resolved.isPresent());
+            return resolved;
+        }
+        try {
+            start(directory, ResolutionDaemon::newInstaller);
+        } catch (IOException e) {
+            logger.warn(() -> "Failed to start driver resolution daemon in " + directory + ": " + e.getMessage());
+        } catch (LinkageError e) {
+            // jdk.httpserver is an optional module, and may be left out of a jlinked runtime
+            logger.warn(() -> "Driver resolution daemon is not available without jdk.httpserver module: " + e);
+        }
+        return installer.ensureInstalled(installRoot);
+    }
+
+    /**
+     * Asks the daemon to resolve the driver.
+     *
+     * @param directory   daemon directory
+     * @param driverName  driver name. chromedriver or geckodriver
+     * @param installRoot directory to be installed
+     * @return path to the driver binary, empty if the daemon failed to install it, or null if no daemon answered
+     */
+    @SuppressWarnings("OptionalAssignedToNull")
+    @Nullable
+    static Optional<String> request(Path directory, String driverName, String installRoot) {
+        final Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            checkPrivate(directory);
+            checkPrivate(file);
+        } catch (IOException e) {
+            logger.warn(() -> "Ignoring driver resolution daemon in " + directory + ": " + e.getMessage());
+            return null;
+        }
+        final Properties p = new Properties();
+        HttpURLConnection con = null;
+        try {
+            try (InputStream is = Files.newInputStream(file)) {
+                p.load(is);
+            }
+            final URL url = new URL("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + Integer.parseInt(p.getProperty("port", "")) + "/ensure"
+                    + "?driver=" + URLEncoder.encode(driverName, "UTF-8")
+                    + "&root=" + URLEncoder.encode(Paths.get(installRoot).toAbsolutePath().toString(), "UTF-8"));
+            con = (HttpURLConnection) url.openConnection();
+            con.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            con.setReadTimeout(READ_TIMEOUT_MILLIS);
+            con.setRequestProperty(TOKEN_HEADER, p.getProperty("token", ""));
+            final int code = con.getResponseCode();
+            if (code == 404) {
+                return Optional.empty();
+            }
+            if (code != 200) {
+                logger.warn(() -> "Driver resolution daemon returns code [" + code + "].");
+                return null;
+            }
+            final String path;
+            try (InputStream is = con.getInputStream()) {
+                path = new String(readAll(is), StandardCharsets.UTF_8);
+            }
+            // never run a binary outside the install root, whatever the daemon answers
+            final Path binary = Paths.get(path).toAbsolutePath().normalize();
+            if (!binary.startsWith(Paths.get(installRoot).toAbsolutePath().normalize()) || !Files.isRegularFile(binary)) {
+                logger.warn(() -> "Driver resolution daemon returns a path outside " + installRoot + ": " + path);
+                return null;
+            }
+            logger.debug(() -> "Resolved " + driverName + " by the daemon: " + path);
+            return Optional.of(path);
+        } catch (IOException | IllegalArgumentException e) {
+            // stale port file of an exited daemon
+            logger.debug(() -> "Driver resolution daemon is not available: " + e.getMessage());
+            return null;
+        } finally {
+            if (con != null) {
+                con.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Starts the daemon unless another one is running on the directory.
+     *
+     * @param directory  daemon directory
+     * @param installers installer for each driver name, returning null for unknown names
+     * @return started daemon, or null if another daemon holds the lock
+     * @throws IOException when failed to start the daemon, or the directory is not private to the user
+     */
+    @Nullable
+    static ResolutionDaemon start(Path directory, Function<String, WebDriverInstaller> installers) throws IOException {
+        createPrivateDirectory(directory);
+        final InstallLock lock = InstallLock.tryAcquire(directory.resolve(LOCK_FILE_NAME));
+        if (lock == null) {
+            return null;
+        }
+        ExecutorService executor = null;
+        try {
+            final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            executor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "webdriver-installer-daemon");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server.setExecutor(executor);
+            final byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            final ResolutionDaemon daemon = new ResolutionDaemon(lock, server, executor, directory.resolve(FILE_NAME), Downloader.toHex(random), installers);
+            server.createContext("/ensure", daemon::handle);
+            server.start();
+            final Properties p = new Properties();
+            p.setProperty("port", String.valueOf(server.getAddress().getPort()));
+            p.setProperty("token", daemon.token);
+            // written to a temporary file first, which is readable only by the owner where supported
+            WebDriverInstaller.storeProperties(p, daemon.file, "driver resolution daemon");
+            started = daemon;
+            logger.info(() -> "Driver resolution daemon listening on port " + server.getAddress().getPort());
+            return daemon;
+        } catch (IOException | RuntimeException | LinkageError e) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            lock.close();
+            throw e;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final byte[] expected = token.getBytes(StandardCharsets.UTF_8);
+            final String actual = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+            if (actual == null || !MessageDigest.isEqual(expected, actual.getBytes(StandardCharsets.UTF_8))) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            final String driverName = query.get("driver");
+            final String installRoot = query.get("root");
+            final WebDriverInstaller installer = driverName != null ? installers.apply(driverName) : null;
+            if (installer == null || installRoot == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            // resolved on each request, so that a long-running daemon follows browser updates. probe and listing caches make it cheap
+            final Optional<String> path = InstallRegistry.resolveShared(driverName, installRoot, () -> installer.install(installRoot));
+            if (!path.isPresent()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final byte[] body = path.get().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } catch (RuntimeException e) {
+            logger.warn(() -> "Failed to resolve driver: " + e.getMessage());
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Stops the daemon and releases the lock. Must be called by the thread which started the daemon.
+     *
+     * @throws IOException when failed to release the lock
+     */
+    void stop() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        started = null;
+        try {
+            Files.deleteIfExists(file);
+        } finally {
+            lock.close();
+        }
+    }
+
+    private static Map<String, String> parseQuery(@Nullable String rawQuery) throws UnsupportedEncodingException {
+        final Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                final int eq = pair.indexOf('=');
+                if (0 < eq) {
+                    query.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * @param path path to the driver binary, e.g. /root/88.0.4324.96/chromedriver
+     * @return driver version, the name of the version directory
+     */
+    private static String versionOf(String path) {
+        return Paths.get(path).getParent().getFileName().toString();
+    }
+
+    @Nullable
+    private static WebDriverInstaller newInstaller(String driver) {
+        switch (driver) {
+            case "chromedriver":
+                return new ChromeDriverInstaller();
+            case "geckodriver":
+                return new GeckodriverInstaller();
+            default:
+                return null;
+        }
+    }
+}
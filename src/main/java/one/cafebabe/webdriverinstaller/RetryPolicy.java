@@ -0,0 +1,247 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * retries failed fetches with exponentially growing, jittered backoff, and optionally hedges slow requests.
+ * Client errors (4xx except 408 and 429) are not retried as they would fail again.
+ */
+final class RetryPolicy {
+    private final static Logger logger = Logger.getLogger();
+
+    /**
+     * environment variable to specify the number of retries after a failed fetch
+     */
+    static final String RETRIES_ENV_NAME = "WEBDRIVER_INSTALLER_RETRIES";
+    /**
+     * system property to specify the number of retries after a failed fetch
+     */
+    static final String RETRIES_PROPERTY_NAME = "webdriverinstaller.retries";
+    /**
+     * environment variable to specify the base backoff in milliseconds
+     */
+    static final String BACKOFF_ENV_NAME = "WEBDRIVER_INSTALLER_RETRY_BACKOFF";
+    /**
+     * system property to specify the base backoff in milliseconds
+     */
+    static final String BACKOFF_PROPERTY_NAME = "webdriverinstaller.retry.backoff";
+    /**
+     * environment variable to specify milliseconds to wait for a response before sending a hedged request
+     */
+    static final String HEDGE_AFTER_ENV_NAME = "WEBDRIVER_INSTALLER_HEDGE_AFTER";
+    /**
+     * system property to specify milliseconds to wait for a response before sending a hedged request
+     */
+    static final String HEDGE_AFTER_PROPERTY_NAME = "webdriverinstaller.hedge.after";
+
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final int retries;
+    private final long backoffMillis;
+    private final long hedgeAfterMillis;
+
+    /**
+     * @param retries          number of retries after the first attempt
+     * @param backoffMillis    base backoff in milliseconds, doubled on each retry
+     * @param hedgeAfterMillis milliseconds to wait for a response before sending the same request again, or 0 not to hedge
+     */
+    RetryPolicy(int retries, long backoffMillis, long hedgeAfterMillis) {
+        this.retries = retries;
+        this.backoffMillis = backoffMillis;
+        this.hedgeAfterMillis = hedgeAfterMillis;
+    }
+
+    @NotNull
+    static RetryPolicy fromConfig() {
+        return new RetryPolicy((int) WebDriverInstaller.getConfigLong(RETRIES_ENV_NAME, RETRIES_PROPERTY_NAME, 3),
+                WebDriverInstaller.getConfigLong(BACKOFF_ENV_NAME, BACKOFF_PROPERTY_NAME, 500),
+                WebDriverInstaller.getConfigLong(HEDGE_AFTER_ENV_NAME, HEDGE_AFTER_PROPERTY_NAME, 0));
+    }
+
+    @FunctionalInterface
+    interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Runs the action, retrying it on retryable failures.
+     *
+     * @param description what the action does, for logging. e.g. "download https://..."
+     * @param action      action to run
+     * @param <T>         result type
+     * @return result of the action
+     * @throws IOException the last failure when retries are exhausted, or a failure not worth retrying
+     */
+    <T> T execute(String description, IOCallable<T> action) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return action.call();
+            } catch (IOException e) {
+                if (retries <= attempt || !isRetryable(e)) {
+                    throw e;
+                }
+                final long backoff = backoff(attempt);
+                final int retry = attempt + 1;
+                logger.warn(() -> "Failed to " + description + ": " + e.getMessage() + " Retrying in " + backoff + " ms (" + retry + "/" + retries + ").");
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    final InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting to " + description);
+                    interrupted.addSuppressed(e);
+                    throw interrupted;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the request, and the same request again if no response arrives within the hedging threshold.
+     * The first successful response is returned and the other one is closed.
+     *
+     * @param request request to send. must be idempotent
+     * @param <T>     response type
+     * @return response
+     * @throws IOException when the request fails, or both requests fail when hedged
+     */
+    <T extends Closeable> T hedge(IOCallable<T> request) throws IOException {
+        if (hedgeAfterMillis <= 0) {
+            return request.call();
+        }
+        final CompletableFuture<T> primary = CompletableFuture.supplyAsync(unchecked(request), HedgeExecutorHolder.EXECUTOR);
+        try {
+            return primary.get(hedgeAfterMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.debug(() -> "No response within " + hedgeAfterMillis + " ms, sending a hedged request.");
+        } catch (InterruptedException | ExecutionException e) {
+            throw unwrap(e);
+        }
+        final CompletableFuture<T> secondary = CompletableFuture.supplyAsync(unchecked(request), HedgeExecutorHolder.EXECUTOR);
+        final CompletableFuture<T> first = new CompletableFuture<>();
+        final AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<T> future : Arrays.asList(primary, secondary)) {
+            future.whenComplete((response, th) -> {
+                if (th != null) {
+                    if (failures.incrementAndGet() == 2) {
+                        first.completeExceptionally(th);
+                    }
+                } else if (!first.complete(response)) {
+                    closeQuietly(response);
+                }
+            });
+        }
+        try {
+            return first.get();
+        } catch (InterruptedException | ExecutionException e) {
+            // responses arriving later are closed by the callbacks above
+            first.cancel(false);
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Only network failures and server side errors are retried. Local failures such as a full disk, denied access,
+     * a checksum mismatch or an unexpected Content-Range fail the same way again.
+     *
+     * @param e failure
+     * @return true if the failure may be transient
+     */
+    static boolean isRetryable(IOException e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        if (e instanceof HttpStatusException) {
+            final int code = ((HttpStatusException) e).getStatusCode();
+            return code == 408 || code == 429 || 500 <= code;
+        }
+        // connection refused or reset, read timeout, name resolution failure, and a body cut off before its length
+        return e instanceof SocketException || e instanceof SocketTimeoutException
+                || e instanceof UnknownHostException || e instanceof EOFException;
+    }
+
+    /**
+     * "full jitter": a random duration up to the exponentially growing cap, so that clients failing together don't retry together
+     *
+     * @param attempt number of attempts failed so far minus one
+     * @return milliseconds to wait before the next attempt
+     */
+    long backoff(int attempt) {
+        final long cap = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt, 20));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static <T> Supplier<T> unchecked(IOCallable<T> request) {
+        return () -> {
+            try {
+                return request.call();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private static IOException unwrap(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            return new InterruptedIOException("Interrupted while waiting for a response");
+        }
+        Throwable cause = e.getCause();
+        while (cause instanceof CompletionException || cause instanceof UncheckedIOException) {
+            cause = cause.getCause();
+        }
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * requests mostly wait for network. runs on daemon threads so that a stalled request never blocks JVM exit
+     */
+    private static final class HedgeExecutorHolder {
+        private static final Executor EXECUTOR = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "webdriver-installer-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
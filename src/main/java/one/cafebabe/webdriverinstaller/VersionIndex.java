@@ -0,0 +1,148 @@
+/*
+   Copyright 2021 Yusuke Yamamoto
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * dotted versions parsed into numeric components and sorted numerically, e.g. 2.9 &lt; 2.10 &lt; 70.0.3538.16
+ */
+final class VersionIndex {
+    private final NavigableMap<int[], String> versions = new TreeMap<>(VersionIndex::compare);
+
+    /**
+     * @param versions versions to be indexed. versions which are not dotted numbers are ignored
+     */
+    VersionIndex(Collection<String> versions) {
+        for (String version : versions) {
+            final int[] parsed = parse(version);
+            if (parsed != null) {
+                this.versions.put(parsed, version);
+            }
+        }
+    }
+
+    int size() {
+        return versions.size();
+    }
+
+    /**
+     * @param version version
+     * @return the version as listed if it's available exactly, or null
+     */
+    @Nullable
+    String get(String version) {
+        final int[] parsed = parse(version);
+        return parsed == null ? null : versions.get(parsed);
+    }
+
+    /**
+     * Returns the latest version which starts with the specified components, e.g. [88, 0] matches 88.0.4324.96 but not 88.1 nor 880.0.
+     *
+     * @param prefix leading components
+     * @return the latest version with the prefix, or null
+     */
+    @Nullable
+    String latestWithPrefix(int[] prefix) {
+        final int[] upperBound = Arrays.copyOf(prefix, prefix.length + 1);
+        upperBound[prefix.length] = Integer.MAX_VALUE;
+        final Map.Entry<int[], String> floor = versions.floorEntry(upperBound);
+        if (floor == null || floor.getKey().length < prefix.length) {
+            return null;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (floor.getKey()[i] != prefix[i]) {
+                return null;
+            }
+        }
+        return floor.getValue();
+    }
+
+    /**
+     * @param major major version
+     * @return the latest version whose major version is older than the specified one, or null
+     */
+    @Nullable
+    String latestBeforeMajor(int major) {
+        final Map.Entry<int[], String> lower = versions.lowerEntry(new int[]{major});
+        return lower == null ? null : lower.getValue();
+    }
+
+    /**
+     * Parses a version into numeric components. Trailing non-digit characters of a component are ignored, e.g. "102.1esr" is [102, 1].
+     *
+     * @param version version
+     * @return components, or null if the version doesn't start with a digit
+     */
+    @Nullable
+    static int[] parse(@NotNull String version) {
+        int[] components = new int[4];
+        int count = 0;
+        int value = 0;
+        boolean digits = false;
+        boolean skipping = false;
+        for (int i = 0; i < version.length(); i++) {
+            final char c = version.charAt(i);
+            if (c == '.') {
+                if (!digits) {
+                    return null;
+                }
+                if (count == components.length) {
+                    components = Arrays.copyOf(components, count * 2);
+                }
+                components[count++] = value;
+                value = 0;
+                digits = false;
+                skipping = false;
+            } else if (!skipping && '0' <= c && c <= '9') {
+                if (value > (Integer.MAX_VALUE - 9) / 10) {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+                digits = true;
+            } else if (digits) {
+                skipping = true;
+            } else {
+                return null;
+            }
+        }
+        if (!digits) {
+            return null;
+        }
+        if (count == components.length) {
+            components = Arrays.copyOf(components, count + 1);
+        }
+        components[count++] = value;
+        return Arrays.copyOf(components, count);
+    }
+
+    private static int compare(int[] a, int[] b) {
+        final int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+}
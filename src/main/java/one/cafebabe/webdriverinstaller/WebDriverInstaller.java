@@ -16,28 +16,43 @@
 
 package one.cafebabe.webdriverinstaller;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.ArchiveException;
-import org.apache.commons.compress.archivers.ArchiveInputStream;
-import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
-import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.file.FileAlreadyExistsException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
 import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * web driver
@@ -89,17 +104,15 @@ import java.util.zip.ZipFile;
      * Checks if suitable version of ChromeDriver applicable to the version of installed Google Chrome at the path specified by CHROME_DRIVER_HOME environment variable or $HOME/chromedriver
      * If ChromeDriver is not found, attempts to download it from <a href="https://chromedriver.storage.googleapis.com/">https://chromedriver.storage.googleapis.com/</a>
      * System Property "webdriver.chrome.driver" will be also set.
+     * The result is remembered per install root in this JVM, see {@link #invalidateResolvedDrivers()}.
+     * In the daemon mode, ChromeDriver is resolved by the daemon shared by JVMs on the host.
      *
-     * @return absolute path to installed chromedriver
+     * @return absolute path to installed chromedriver, or empty if the browser is not found or the installation failed
      */
     @NotNull
     public static Optional<String> ensureChromeDriverInstalled() {
-        final String chromeDriverHome = System.getenv(CHROME_DRIVER_ENV_NAME);
-        String path = chromeDriverHome != null ? chromeDriverHome :
-                System.getProperty(CHROME_DRIVER_PROPERTY_NAME,
-                        System.getProperty("user.home") + File.separator + "chromedriver");
-
-        return new ChromeDriverInstaller().ensureInstalled(path);
+        final String path = getChromeDriverHome();
+        return InstallRegistry.resolve("chromedriver", path, () -> ResolutionDaemon.ensureInstalled(new ChromeDriverInstaller(), path));
     }
 
     /**
@@ -116,21 +129,141 @@ import java.util.zip.ZipFile;
      * or geckodriver.home system property, or $HOME/geckodriver
      * If geckodriver is not found, attempts to download it from <a href="https://github.com/mozilla/geckodriver/releases/">mozilla geckodriver Releases</a>
      * System Property "webdriver.gecko.driver" will be also set.
+     * The result is remembered per install root in this JVM, see {@link #invalidateResolvedDrivers()}.
+     * In the daemon mode, geckodriver is resolved by the daemon shared by JVMs on the host.
      *
-     * @return absolute path to installed geckodriver
+     * @return absolute path to installed geckodriver, or empty if the browser is not found or the installation failed
      */
     @NotNull
     public static Optional<String> ensureGeckoDriverInstalled() {
+        final String path = getGeckoDriverHome();
+        return InstallRegistry.resolve("geckodriver", path, () -> ResolutionDaemon.ensureInstalled(new GeckodriverInstaller(), path));
+    }
+
+    /**
+     * @return install root of ChromeDriver specified by CHROME_DRIVER_HOME environment variable, chromedriver.home system property, or $HOME/chromedriver
+     */
+    @NotNull
+    static String getChromeDriverHome() {
+        final String chromeDriverHome = System.getenv(CHROME_DRIVER_ENV_NAME);
+        return chromeDriverHome != null ? chromeDriverHome :
+                System.getProperty(CHROME_DRIVER_PROPERTY_NAME,
+                        System.getProperty("user.home") + File.separator + "chromedriver");
+    }
+
+    /**
+     * @return install root of geckodriver specified by GECKO_DRIVER_HOME environment variable, geckodriver.home system property, or $HOME/geckodriver
+     */
+    @NotNull
+    static String getGeckoDriverHome() {
         final String geckoDriverHome = System.getenv(GECKO_DRIVER_ENV_NAME);
-        String path = geckoDriverHome != null ? geckoDriverHome :
+        return geckoDriverHome != null ? geckoDriverHome :
                 System.getProperty(GECKO_DRIVER_PROPERTY_NAME,
                         System.getProperty("user.home") + File.separator + "geckodriver");
-        return new GeckodriverInstaller().ensureInstalled(path);
     }
 
+    /**
+     * Forgets drivers resolved by {@link #ensureChromeDriverInstalled()} and {@link #ensureGeckoDriverInstalled()} in this JVM.
+     * Those methods probe the browser only once per install root and return the remembered path afterwards.
+     * Call this after upgrading the browser, or after removing installed drivers, while the JVM is running.
+     */
+    public static void invalidateResolvedDrivers() {
+        InstallRegistry.invalidate();
+    }
+
+    /**
+     * Asynchronously ensures ChromeDriver is installed. See {@link #ensureChromeDriverInstalled()}.
+     *
+     * @return future of the absolute path to installed chromedriver
+     */
+    @NotNull
+    public static CompletableFuture<Optional<String>> ensureChromeDriverInstalledAsync() {
+        return ensureChromeDriverInstalledAsync(AsyncExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * Asynchronously ensures ChromeDriver is installed. See {@link #ensureChromeDriverInstalled()}.
+     *
+     * @param executor executor to run the installation
+     * @return future of the absolute path to installed chromedriver
+     */
+    @NotNull
+    public static CompletableFuture<Optional<String>> ensureChromeDriverInstalledAsync(@NotNull Executor executor) {
+        return CompletableFuture.supplyAsync(WebDriverInstaller::ensureChromeDriverInstalled, executor);
+    }
+
+    /**
+     * Asynchronously ensures geckodriver is installed. See {@link #ensureGeckoDriverInstalled()}.
+     *
+     * @return future of the absolute path to installed geckodriver
+     */
+    @NotNull
+    public static CompletableFuture<Optional<String>> ensureGeckoDriverInstalledAsync() {
+        return ensureGeckoDriverInstalledAsync(AsyncExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * Asynchronously ensures geckodriver is installed. See {@link #ensureGeckoDriverInstalled()}.
+     *
+     * @param executor executor to run the installation
+     * @return future of the absolute path to installed geckodriver
+     */
+    @NotNull
+    public static CompletableFuture<Optional<String>> ensureGeckoDriverInstalledAsync(@NotNull Executor executor) {
+        return CompletableFuture.supplyAsync(WebDriverInstaller::ensureGeckoDriverInstalled, executor);
+    }
+
+    /**
+     * Installation mostly waits for processes and network. Runs on its own daemon threads rather than the common pool,
+     * which may have only one thread on small machines.
+     */
+    private static final class AsyncExecutorHolder {
+        private static final Executor EXECUTOR = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "webdriver-installer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers a listener receiving events of each installation phase.
+     *
+     * @param listener listener to be registered
+     */
+    public static void addInstallListener(@NotNull InstallListener listener) {
+        InstallListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener registered with {@link #addInstallListener(InstallListener)}.
+     *
+     * @param listener listener to be unregistered
+     */
+    public static void removeInstallListener(@NotNull InstallListener listener) {
+        InstallListeners.remove(listener);
+    }
+
+
+    @NotNull
+    String getDriverName() {
+        return driverName;
+    }
+
+    /**
+     * @return system property set to the path of the installed driver
+     */
+    @NotNull
+    String getSystemPropertyName() {
+        return systemPropertyName;
+    }
 
     private boolean initialized = false;
 
+    /**
+     * true if the versions the driver version was last resolved from were served from a cache in the install root, set by {@link #getSuitableDriverVersion(Path, String)}
+     */
+    boolean versionsFromCache = false;
+
     /**
      * ensure ChromeDriver is installed on the specified directory
      *
@@ -140,14 +273,61 @@ import java.util.zip.ZipFile;
 
     @NotNull
     synchronized Optional<String> ensureInstalled(String installRoot) {
-        final Optional<String> installedVersion = getInstalledAppVersion();
+        return ensureInstalled(installRoot, true);
+    }
+
+    /**
+     * Installs the driver like {@link #ensureInstalled(String)}, without setting the system property or notifying listeners.
+     * Used to resolve on behalf of another JVM, whose system property and listeners are not in this JVM.
+     *
+     * @param installRoot directory to be installed
+     * @return path to the driver binary
+     */
+    @NotNull
+    synchronized Optional<String> install(String installRoot) {
+        return InstallListeners.muted(() -> ensureInstalled(installRoot, false));
+    }
+
+    @NotNull
+    private Optional<String> ensureInstalled(String installRoot, boolean publish) {
+        final long installStart = System.nanoTime();
+        final Optional<String> installedVersion = getInstalledAppVersion(Paths.get(installRoot));
         if (!installedVersion.isPresent()) {
+            InstallListeners.fire(InstallEvent.Phase.INSTALL, driverName, null, installStart, 0, false, false);
             return Optional.empty();
         }
-
         // 88.0.4324.96
-        final String browserVersion = installedVersion.get();
-        final String suitableDriverVersion = getSuitableDriverVersion(browserVersion);
+        return ensureInstalled(installRoot, installedVersion.get(), installStart, publish);
+    }
+
+    /**
+     * ensure the driver suitable to the specified browser version is installed on the specified directory, without probing the installed browser
+     *
+     * @param installRoot    directory to be installed
+     * @param browserVersion browser version
+     * @return path to the driver binary
+     */
+    @NotNull
+    synchronized Optional<String> ensureInstalled(String installRoot, String browserVersion) {
+        return ensureInstalled(installRoot, browserVersion, System.nanoTime(), true);
+    }
+
+    /**
+     * @param publish true to set the system property, and to skip the checks once done
+     */
+    @NotNull
+    private Optional<String> ensureInstalled(String installRoot, String browserVersion, long installStart, boolean publish) {
+        final long resolveStart = System.nanoTime();
+        final String suitableDriverVersion;
+        versionsFromCache = false;
+        try {
+            suitableDriverVersion = getSuitableDriverVersion(Paths.get(installRoot), browserVersion);
+        } catch (RuntimeException e) {
+            InstallListeners.fire(InstallEvent.Phase.RESOLVE, driverName, null, resolveStart, 0, false, false);
+            InstallListeners.fire(InstallEvent.Phase.INSTALL, driverName, null, installStart, 0, false, false);
+            throw e;
+        }
+        InstallListeners.fire(InstallEvent.Phase.RESOLVE, driverName, suitableDriverVersion, resolveStart, 0, versionsFromCache, true);
 
         String binName = driverName + (isWin() ? ".exe" : "");
         // ex) geckodriver-v0.29.0-linux64.tar.gz
@@ -167,35 +347,216 @@ import java.util.zip.ZipFile;
         String nativeDriver = bin.toString();
         // download nativeDriver
         String downloadURL = getDownloadURL(suitableDriverVersion, fileName);
-        if (!initialized) {
+        if (!publish || !initialized) {
+            boolean cacheHit = true;
             try {
-                if (Files.exists(bin)) {
+                final String expectedSha256 = resolveExpectedSha256(getChecksumConfig(), suitableDriverVersion, fileName);
+                if (isInstalled(bin, archivePath, expectedSha256)) {
                     logger.info(nativeDriver + " already installed at: " + bin.toAbsolutePath());
-                    initialized = true;
                 } else {
-                    download(downloadURL, archivePath, installRootPath, bin);
+                    // /root/88.0.4324.96.lock
+                    // only one process downloads, others wait and reuse the result
+                    try (InstallLock ignored = InstallLock.acquire(Paths.get(installRoot, suitableDriverVersion + ".lock"))) {
+                        if (isInstalled(bin, archivePath, expectedSha256)) {
+                            logger.info(nativeDriver + " installed by another process at: " + bin.toAbsolutePath());
+                        } else {
+                            final DriverStore store = DriverStore.fromConfig();
+                            if (store != null) {
+                                cacheHit = store.install(driverName, suitableDriverVersion, downloadURL, fileName, binName, expectedSha256, installRootPath);
+                            } else {
+                                cacheHit = false;
+                                download(driverName, suitableDriverVersion, downloadURL, archivePath, installRootPath, bin, expectedSha256);
+                            }
+                            if (InstallRootCleaner.isDeleteArchive()) {
+                                // the digest is kept in the .sha256 sidecar
+                                Files.deleteIfExists(archivePath);
+                            }
+                        }
+                    }
                 }
-                System.setProperty(systemPropertyName, nativeDriver);
-                initialized = true;
+                cleanInstallRoot(Paths.get(installRoot), installRootPath, binName);
+                if (publish) {
+                    System.setProperty(systemPropertyName, nativeDriver);
+                    initialized = true;
+                }
+                InstallListeners.fire(InstallEvent.Phase.INSTALL, driverName, suitableDriverVersion, installStart, 0, cacheHit, true);
             } catch (IOException ioe) {
+                InstallListeners.fire(InstallEvent.Phase.INSTALL, driverName, suitableDriverVersion, installStart, 0, false, false);
                 logger.warn(() -> "Failed to download: " + downloadURL);
                 ioe.printStackTrace();
+                return Optional.empty();
             }
         }
         return Optional.of(nativeDriver);
     }
 
+    /**
+     * @param bin            path to the driver binary
+     * @param archivePath    path to the archive the binary is extracted from, whose digest is kept in the .sha256 sidecar
+     * @param expectedSha256 expected SHA-256 of the archive, or null not to verify
+     * @return true if the binary exists, and was extracted from the archive with the expected digest
+     * @throws IOException when failed to read the sidecar
+     */
+    static boolean isInstalled(Path bin, Path archivePath, @Nullable String expectedSha256) throws IOException {
+        if (!Files.exists(bin)) {
+            return false;
+        }
+        if (expectedSha256 == null) {
+            return true;
+        }
+        final Path sha256Path = archivePath.resolveSibling(archivePath.getFileName() + ".sha256");
+        // sha256sum format: "<digest>  <file name>"
+        final String recorded = Files.exists(sha256Path) ? new String(Files.readAllBytes(sha256Path), StandardCharsets.UTF_8).trim().split("\\s+")[0] : null;
+        if (expectedSha256.equalsIgnoreCase(recorded)) {
+            return true;
+        }
+        logger.warn(() -> bin + " was not extracted from the archive with SHA-256 " + expectedSha256 + ", reinstalling.");
+        return false;
+    }
+
+    private static void cleanInstallRoot(Path installRoot, Path installRootPath, String binName) {
+        try {
+            InstallRootCleaner.touch(installRootPath);
+            InstallRootCleaner.fromConfig().clean(installRoot, installRootPath.getFileName().toString(), binName);
+        } catch (IOException ioe) {
+            logger.warn(() -> "Failed to evict old drivers from " + installRoot + ": " + ioe.getMessage());
+        }
+    }
+
     abstract String getSuitableDriverVersion(String browserVersion);
 
+    /**
+     * Returns suitable driver version. Implementations may keep metadata under the install root to avoid network round trips,
+     * and set {@link #versionsFromCache} when it's used.
+     *
+     * @param installRoot    directory to be installed
+     * @param browserVersion browser version
+     * @return suitable driver version
+     */
+    String getSuitableDriverVersion(Path installRoot, String browserVersion) {
+        return getSuitableDriverVersion(browserVersion);
+    }
+
+    /**
+     * Returns configuration value from the environment variable, or the system property.
+     *
+     * @param envName      environment variable name
+     * @param propertyName system property name
+     * @param defaultValue value to be returned if neither is set
+     * @return configuration value
+     */
+    static String getConfig(String envName, String propertyName, String defaultValue) {
+        final String env = System.getenv(envName);
+        return env != null ? env : System.getProperty(propertyName, defaultValue);
+    }
+
+    /**
+     * Returns numeric configuration value from the environment variable, or the system property.
+     * A value which is not a number is ignored with a warning, so that a typo doesn't fail installs.
+     *
+     * @param envName      environment variable name
+     * @param propertyName system property name
+     * @param defaultValue value to be returned if neither is set, or the value is not a number
+     * @return configuration value
+     */
+    static long getConfigLong(String envName, String propertyName, long defaultValue) {
+        final String value = getConfig(envName, propertyName, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn(() -> "Ignoring invalid " + envName + " / " + propertyName + ": " + value + ", using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param version driver version
+     * @return archive file name of the driver for the running OS
+     */
     @NotNull
-    abstract String toFileName(String version);
+    String toFileName(String version) {
+        return toFileName(version, DETECTED_OS);
+    }
+
+    /**
+     * @param version driver version
+     * @param os      target OS
+     * @return archive file name of the driver for the OS
+     */
+    @NotNull
+    abstract String toFileName(String version, OS os);
+
+    /**
+     * Returns expected SHA-256 of the archive, either a digest in hex, or a url of a published digest file.
+     *
+     * @return SHA-256 configuration, or null not to verify archives
+     */
+    @Nullable
+    abstract String getChecksumConfig();
+
+    /**
+     * Resolves expected SHA-256 of the archive.
+     *
+     * @param config   digest in hex, or a url of a digest file in sha256sum format. {version} and {fileName} in the url are substituted
+     * @param version  driver version
+     * @param fileName archive file name
+     * @return expected digest, or null if not configured
+     * @throws IOException when failed to fetch the digest file, or the digest file doesn't contain the archive
+     */
+    @Nullable
+    static String resolveExpectedSha256(@Nullable String config, String version, String fileName) throws IOException {
+        if (config == null || config.trim().isEmpty()) {
+            return null;
+        }
+        if (config.trim().matches("[0-9a-fA-F]{64}")) {
+            return config.trim();
+        }
+        final String url = config.replace("{version}", version).replace("{fileName}", fileName);
+        final RetryPolicy retryPolicy = RetryPolicy.fromConfig();
+        final String digest = retryPolicy.execute("fetch " + url, () -> {
+            try (Http.Response response = retryPolicy.hedge(() -> Http.getCompressible(url, Collections.emptyMap()))) {
+                if (response.code() != 200) {
+                    throw new HttpStatusException(url, response.code());
+                }
+                return findDigest(response.body(), fileName);
+            }
+        });
+        if (digest == null) {
+            throw new IOException("SHA-256 of " + fileName + " not found in " + url);
+        }
+        return digest;
+    }
+
+    @Nullable
+    private static String findDigest(InputStream digestFile, String fileName) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(digestFile, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // <digest>  <file name>, <digest> *<file name>, or <digest> alone
+                final String[] digestAndName = line.trim().split("\\s+\\*?", 2);
+                if (digestAndName[0].matches("[0-9a-fA-F]{64}") && (digestAndName.length == 1
+                        || digestAndName[1].equals(fileName) || digestAndName[1].endsWith("/" + fileName))) {
+                    return digestAndName[0];
+                }
+            }
+        }
+        return null;
+    }
 
     @NotNull
     abstract String getDownloadURL(String version, String fileName);
 
     @Nullable
     String choose(String linux32, String linux64, String mac, String win32, String win64) {
-        switch (DETECTED_OS) {
+        return choose(DETECTED_OS, linux32, linux64, mac, win32, win64);
+    }
+
+    @Nullable
+    static String choose(OS os, String linux32, String linux64, String mac, String win32, String win64) {
+        switch (os) {
             case LINUX32:
                 return linux32;
             case LINUX64:
@@ -226,6 +587,19 @@ import java.util.zip.ZipFile;
      * @return version string of installed app
      */
     public Optional<String> getInstalledAppVersion() {
+        return getInstalledAppVersion(null);
+    }
+
+    /**
+     * Returns version string of installed app. The app path and the version are reused from the cache in the specified directory
+     * until the app binary changes in size or modification time, so that no process is spawned.
+     *
+     * @param cacheDir directory to cache probe results, or null not to cache
+     * @return version string of installed app
+     */
+    Optional<String> getInstalledAppVersion(@Nullable Path cacheDir) {
+        final long start = System.nanoTime();
+        final ProbeCache cache = cacheDir == null ? null : ProbeCache.load(cacheDir.resolve(ProbeCache.FILE_NAME));
         try {
             String appPath;
             switch (DETECTED_OS) {
@@ -234,29 +608,54 @@ import java.util.zip.ZipFile;
                     break;
                 case LINUX32:
                 case LINUX64:
-                    appPath = getAppPath(linuxApp);
+                    appPath = resolveAppPath(cache, linuxApp);
                     break;
                 case WINDOWS32:
                 case WINDOWS64:
-                    appPath = getAppPath(winApp);
+                    appPath = resolveAppPath(cache, winApp);
                     break;
                 default:
                     throw new UnsupportedOperationException("Not yet supported");
             }
             if (!new File(appPath).exists()) {
                 logger.warn(() -> "App not found at " + appPath);
+                InstallListeners.fire(InstallEvent.Phase.PROBE, driverName, null, start, 0, false, false);
                 return Optional.empty();
             }
+            final String cachedVersion = cache == null ? null : cache.getVersion(appPath);
+            if (cachedVersion != null) {
+                logger.debug(() -> appName + " version " + cachedVersion + " found in the probe cache.");
+                InstallListeners.fire(InstallEvent.Phase.PROBE, driverName, cachedVersion, start, 0, true, true);
+                return Optional.of(cachedVersion);
+            }
             final String result = getAppVersion(appPath);
             final String versionString = result.substring(result.lastIndexOf(" ") + 1);
+            if (cache != null) {
+                cache.putVersion(appPath, versionString);
+                cache.save();
+            }
+            InstallListeners.fire(InstallEvent.Phase.PROBE, driverName, versionString, start, 0, false, true);
             return Optional.of(versionString);
         } catch (IOException | InterruptedException e) {
+            InstallListeners.fire(InstallEvent.Phase.PROBE, driverName, null, start, 0, false, false);
             logger.warn(() -> "Failed to locate " + appName);
             e.printStackTrace();
             return Optional.empty();
         }
     }
 
+    private String resolveAppPath(@Nullable ProbeCache cache, String name) throws IOException, InterruptedException {
+        final String cachedPath = cache == null ? null : cache.getAppPath(name);
+        if (cachedPath != null) {
+            return cachedPath;
+        }
+        final String appPath = getAppPath(name);
+        if (cache != null) {
+            cache.putAppPath(name, appPath);
+        }
+        return appPath;
+    }
+
 
     /**
      * check if the running OS is Windows
@@ -268,116 +667,434 @@ import java.util.zip.ZipFile;
     }
 
 
+    /**
+     * environment variable to specify how long to wait for a browser probe process, in seconds
+     */
+    static final String PROCESS_TIMEOUT_ENV_NAME = "WEBDRIVER_INSTALLER_PROCESS_TIMEOUT";
+    /**
+     * system property to specify how long to wait for a browser probe process, in seconds
+     */
+    static final String PROCESS_TIMEOUT_PROPERTY_NAME = "webdriverinstaller.process.timeout";
+    private static final int MAX_OUTPUT_LENGTH = 64 * 1024;
+
+    /**
+     * Executes the commands and returns the output. The output is read from a pipe, up to 64KiB.
+     * The process and its descendants are killed if it doesn't finish within the timeout.
+     *
+     * @param directory working directory
+     * @param commands  commands
+     * @return trimmed output of the process
+     * @throws IOException          when the process failed, or timed out
+     * @throws InterruptedException when interrupted
+     */
     static String execute(File directory, String[] commands) throws IOException, InterruptedException {
-        File tempFile = File.createTempFile("chromeDriverInstaller", "out");
-        tempFile.deleteOnExit();
+        final long timeoutSeconds = getConfigLong(PROCESS_TIMEOUT_ENV_NAME, PROCESS_TIMEOUT_PROPERTY_NAME, 30);
+        ProcessBuilder pb = new ProcessBuilder(commands)
+                .directory(directory)
+                .redirectErrorStream(true);
+        Process process = pb.start();
         try {
-            ProcessBuilder pb = new ProcessBuilder(commands)
-                    .directory(directory)
-                    .redirectErrorStream(true)
-                    .redirectOutput(ProcessBuilder.Redirect.to(tempFile));
-            Process process = pb.start();
-            process.waitFor();
-
-            String output = new String(Files.readAllBytes(tempFile.toPath()));
+            process.getOutputStream().close();
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            // drained on another thread so that the timeout applies even when the process never closes the pipe
+            Thread reader = new Thread(() -> {
+                final byte[] buffer = new byte[4096];
+                try (InputStream is = process.getInputStream()) {
+                    int read;
+                    while ((read = is.read(buffer)) != -1) {
+                        synchronized (output) {
+                            // keep draining beyond the limit, so that the process doesn't block on a full pipe
+                            output.write(buffer, 0, Math.max(0, Math.min(read, MAX_OUTPUT_LENGTH - output.size())));
+                        }
+                    }
+                } catch (IOException ignore) {
+                    // the process has been killed
+                }
+            }, "webdriver-installer-process-output");
+            reader.setDaemon(true);
+            reader.start();
+            if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                throw new IOException("Execution timed out after " + timeoutSeconds + " seconds. commands: " + Arrays.toString(commands));
+            }
+            // descendants may still hold the pipe open
+            reader.join(1000);
+            final String outputString;
+            synchronized (output) {
+                outputString = output.toString();
+            }
             if (process.exitValue() != 0) {
-                throw new IOException("Execution failed. commands: " + Arrays.toString(commands) + ", output:" + output);
+                throw new IOException("Execution failed. commands: " + Arrays.toString(commands) + ", output:" + outputString);
             }
-
-            return output.trim();
+            return outputString.trim();
         } finally {
-            //noinspection ResultOfMethodCallIgnored
-            tempFile.delete();
+            destroyProcessTree(process);
         }
     }
 
-    static void download(String downloadURL, Path archivePath, Path installRootPath, Path bin) throws IOException {
-        Files.createDirectories(installRootPath);
-        //noinspection ResultOfMethodCallIgnored
-        archivePath.toFile().delete();
-        URL url = new URL(downloadURL);
-        HttpURLConnection con = null;
+    /**
+     * Kills the process along with its descendants. Descendants can only be found on Java 9+.
+     *
+     * @param process process to kill
+     */
+    private static void destroyProcessTree(Process process) {
         try {
-            con = (HttpURLConnection) url.openConnection();
-            con.setReadTimeout(5000);
-            con.setConnectTimeout(5000);
-            int code = con.getResponseCode();
-            if (code == 200) {
-                Files.copy(con.getInputStream(), archivePath);
-            } else {
-                throw new IOException("URL[" + url + "] returns code [" + code + "].");
+            final Method destroyForcibly = Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+            ((Stream<?>) Process.class.getMethod("descendants").invoke(process)).forEach(handle -> {
+                try {
+                    destroyForcibly.invoke(handle);
+                } catch (ReflectiveOperationException ignore) {
+                }
+            });
+        } catch (ReflectiveOperationException ignore) {
+            // Java 8
+        }
+        if (process.isAlive()) {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Downloads and extracts the archive into a staging directory next to the install directory, then publishes it with an atomic move.
+     * The install directory either doesn't exist or contains a complete install.
+     *
+     * @param downloadURL     url of the archive
+     * @param archivePath     path to the archive in the install directory
+     * @param installRootPath install directory
+     * @param bin             path to the driver binary in the install directory
+     * @param expectedSha256  expected SHA-256 of the archive, or null not to verify
+     * @return SHA-256 of the archive in hex
+     * @throws IOException when failed to download, the digest doesn't match, or the archive doesn't contain the driver binary
+     */
+    static String download(String downloadURL, Path archivePath, Path installRootPath, Path bin, @Nullable String expectedSha256) throws IOException {
+        final String binName = bin.getFileName().toString();
+        return download(binName.endsWith(".exe") ? binName.substring(0, binName.length() - 4) : binName,
+                installRootPath.getFileName().toString(), downloadURL, archivePath, installRootPath, bin, expectedSha256);
+    }
+
+    /**
+     * Downloads and extracts the archive like {@link #download(String, Path, Path, Path, String)}, reporting the phases to {@link InstallListener}s.
+     *
+     * @param driverName      driver name reported in events
+     * @param version         driver version reported in events
+     * @param downloadURL     url of the archive
+     * @param archivePath     path to the archive in the install directory
+     * @param installRootPath install directory
+     * @param bin             path to the driver binary in the install directory
+     * @param expectedSha256  expected SHA-256 of the archive, or null not to verify
+     * @return SHA-256 of the archive in hex
+     * @throws IOException when failed to download, the digest doesn't match, or the archive doesn't contain the driver binary
+     */
+    static String download(String driverName, String version, String downloadURL, Path archivePath, Path installRootPath, Path bin, @Nullable String expectedSha256) throws IOException {
+        // /root/88.0.4324.96.tmp
+        final Path stagingPath = installRootPath.resolveSibling(installRootPath.getFileName() + ".tmp");
+        final Path stagingArchivePath = stagingPath.resolve(installRootPath.relativize(archivePath));
+        // leftovers of a crashed run can't be trusted, except the partial download which is validated on resume
+        cleanStaging(stagingPath, Downloader.partialPath(stagingArchivePath).getFileName().toString());
+        Files.createDirectories(stagingPath);
+        final long downloadStart = System.nanoTime();
+        final String sha256;
+        try {
+            // each retry resumes the partial download
+            sha256 = RetryPolicy.fromConfig().execute("download " + downloadURL,
+                    () -> Downloader.download(downloadURL, stagingArchivePath, expectedSha256));
+        } catch (IOException e) {
+            InstallListeners.fire(InstallEvent.Phase.DOWNLOAD, driverName, version, downloadStart, 0, false, false);
+            throw e;
+        }
+        InstallListeners.fire(InstallEvent.Phase.DOWNLOAD, driverName, version, downloadStart, Files.size(stagingArchivePath), false, true);
+        // kept along with the install so that the archive never needs to be hashed again
+        final Path sha256Path = stagingArchivePath.resolveSibling(stagingArchivePath.getFileName() + ".sha256");
+        Files.write(sha256Path, (sha256 + "  " + stagingArchivePath.getFileName() + "\n").getBytes(StandardCharsets.UTF_8));
+        final long decompressStart = System.nanoTime();
+        try {
+            // only the binary, the rest of the archive (LICENSE and such) is never written
+            decompress(stagingArchivePath, stagingPath, bin.getFileName().toString());
+        } catch (IOException e) {
+            InstallListeners.fire(InstallEvent.Phase.DECOMPRESS, driverName, version, decompressStart, 0, false, false);
+            throw e;
+        }
+        InstallListeners.fire(InstallEvent.Phase.DECOMPRESS, driverName, version, decompressStart,
+                extractedSize(stagingPath, stagingArchivePath, sha256Path), false, true);
+        publish(stagingPath, installRootPath);
+        return sha256;
+    }
+
+    private static long extractedSize(Path stagingPath, Path archivePath, Path sha256Path) throws IOException {
+        try (Stream<Path> paths = Files.walk(stagingPath)) {
+            return paths.filter(path -> !path.equals(archivePath) && !path.equals(sha256Path) && Files.isRegularFile(path))
+                    .mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static void cleanStaging(Path stagingPath, String partialFileName) throws IOException {
+        if (!Files.isDirectory(stagingPath)) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(stagingPath)) {
+            for (Path entry : entries) {
+                if (!entry.getFileName().toString().startsWith(partialFileName)) {
+                    deleteRecursively(entry);
+                }
+            }
+        }
+    }
+
+    static void publish(Path stagingPath, Path installRootPath) throws IOException {
+        // incomplete install left by an older version of this library
+        deleteRecursively(installRootPath);
+        try {
+            Files.move(stagingPath, installRootPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(stagingPath, installRootPath);
+        }
+    }
+
+    /**
+     * Stores properties through a temporary file so that concurrent readers never see a partially written file.
+     *
+     * @param properties properties to store
+     * @param file       destination
+     * @param comments   comments
+     * @throws IOException when failed to write
+     */
+    static void storeProperties(Properties properties, Path file, String comments) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(temp)) {
+                properties.store(os, comments);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
             }
         } finally {
-            if (con != null) {
-                con.disconnect();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
             }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Extracts the archive.
+     *
+     * @param toDecompress zip, tar.gz, tar.bz2 or tar.xz archive
+     * @param root         directory to extract
+     * @throws IOException when failed to extract
+     */
+    static void decompress(Path toDecompress, Path root) throws IOException {
+        decompress(toDecompress, root, null);
+    }
+
+    /**
+     * Extracts the archive, or only the driver binary in it.
+     * The binary is extracted directly under the root, wherever it is in the archive, and other entries are skipped.
+     *
+     * @param toDecompress zip, tar.gz, tar.bz2 or tar.xz archive
+     * @param root         directory to extract
+     * @param binName      file name of the driver binary to be extracted, or null to extract all entries
+     * @throws IOException when failed to extract, or the archive doesn't contain the binary
+     */
+    static void decompress(Path toDecompress, Path root, @Nullable String binName) throws IOException {
+        if (binName != null && (binName.isEmpty() || !binName.equals(Paths.get(binName).getFileName().toString()))) {
+            throw new IllegalArgumentException("Not a file name: " + binName);
+        }
+        if (isTar(toDecompress)) {
+            unTar(toDecompress, root, binName);
+        } else {
+            unZip(toDecompress, root, binName);
         }
-        decompress(archivePath, installRootPath);
-        //noinspection ResultOfMethodCallIgnored
-        bin.toFile().setExecutable(true);
     }
 
-    private static void unZip(Path toUnzip, Path root) throws IOException {
+    static boolean isTar(Path archive) {
+        final String name = archive.getFileName().toString();
+        return name.endsWith(".tar.gz") || name.endsWith(".tgz") || name.endsWith(".tar.bz2") || name.endsWith(".tar.xz");
+    }
+
+    /**
+     * Extracts zip entries located through the central directory. File modes are restored from the unix extra attributes.
+     *
+     * @param toUnzip zip archive
+     * @param root    directory to extract
+     * @param binName file name of the driver binary to be extracted, or null to extract all entries
+     * @throws IOException when failed to extract
+     */
+    private static void unZip(Path toUnzip, Path root, @Nullable String binName) throws IOException {
+        Files.createDirectories(root);
+        final Path normalizedRoot = root.toAbsolutePath().normalize();
         try (ZipFile zip = new ZipFile(toUnzip.toFile())) {
-            Enumeration<? extends ZipEntry> entries = zip.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                if (entry.isDirectory()) {
-                    try {
-                        Files.createDirectories(root.resolve(entry.getName()));
-                    } catch (FileAlreadyExistsException ignore) {
+            if (binName != null) {
+                // the shallowest match, newer chromedriver zips nest the binary in a directory
+                ZipArchiveEntry found = null;
+                for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                    if (!entry.isDirectory() && isEntryOf(entry.getName(), binName)
+                            && (found == null || depth(entry.getName()) < depth(found.getName()))) {
+                        found = entry;
                     }
+                }
+                if (found == null) {
+                    throw new IOException(binName + " not found in " + toUnzip);
+                }
+                // never resolved against the entry name, so a crafted entry can't escape the root
+                final Path out = normalizedRoot.resolve(binName);
+                try (InputStream is = zip.getInputStream(found)) {
+                    Files.copy(is, out, StandardCopyOption.REPLACE_EXISTING);
+                }
+                // archives created on Windows carry no unix mode
+                applyMode(out, (found.getUnixMode() & 0777) != 0 ? found.getUnixMode() : 0755);
+                return;
+            }
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                final Path out = normalizedRoot.resolve(entry.getName()).normalize();
+                if (!out.startsWith(normalizedRoot)) {
+                    throw new IOException("Entry outside the target directory: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(out);
                 } else {
-                    try (InputStream is = new BufferedInputStream(zip.getInputStream(entry))) {
-                        try {
-                            Files.copy(is, root.resolve(entry.getName()));
-                        } catch (FileAlreadyExistsException ignore) {
-                        }
+                    Files.createDirectories(out.getParent());
+                    try (InputStream is = zip.getInputStream(entry)) {
+                        Files.copy(is, out, StandardCopyOption.REPLACE_EXISTING);
                     }
+                    applyMode(out, entry.getUnixMode());
                 }
             }
         }
     }
 
-    static void decompress(Path toDecompress, Path root) throws IOException {
-        if (toDecompress.toString().matches(".*(tar.bz2|tar.gz)$")) {
-            unTar(toDecompress, root);
-        } else {
-            unZip(toDecompress, root);
-        }
+    /**
+     * @param entryName entry name in the archive. e.g. chromedriver-linux64/chromedriver
+     * @param binName   file name of the driver binary
+     * @return true if the entry is the binary, at any depth
+     */
+    private static boolean isEntryOf(String entryName, String binName) {
+        final String name = entryName.replace('\\', '/');
+        return name.equals(binName) || name.endsWith("/" + binName);
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    private static void unTar(Path toDecompress, Path root) throws IOException {
-        File tarFile = File.createTempFile("driver", "tar");
-        try (InputStream in = toDecompress.toString().endsWith(".gz") ?
-                new GZIPInputStream(Files.newInputStream(toDecompress.toFile().toPath()))
-                : new BZip2CompressorInputStream(Files.newInputStream(toDecompress.toFile().toPath()));
-             FileOutputStream out = new FileOutputStream(tarFile)) {
-            IOUtils.copy(in, out);
+    private static int depth(String entryName) {
+        final String name = entryName.replace('\\', '/');
+        int depth = 0;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == '/') {
+                depth++;
+            }
         }
+        return depth;
+    }
 
-        File outputDir = root.toFile();
-        outputDir.mkdirs();
-        try (ArchiveInputStream is = new ArchiveStreamFactory()
-                .createArchiveInputStream("tar", Files.newInputStream(tarFile.toPath()))) {
-            ArchiveEntry entry;
-            while ((entry = is.getNextEntry()) != null) {
-                File out = new File(outputDir, entry.getName());
-                if (entry.isDirectory()) {
-                    out.mkdirs();
-                } else {
-                    try (OutputStream fos = Files.newOutputStream(out.toPath())) {
-                        IOUtils.copy(is, fos);
+    /**
+     * Extracts tar entries directly from the decompressor. File modes are restored from the tar header.
+     *
+     * @param toDecompress tar.gz, tar.bz2 or tar.xz archive
+     * @param root         directory to extract
+     * @param binName      file name of the driver binary to be extracted, or null to extract all entries
+     * @throws IOException when failed to extract
+     */
+    private static void unTar(Path toDecompress, Path root, @Nullable String binName) throws IOException {
+        Files.createDirectories(root);
+        final Path normalizedRoot = root.toAbsolutePath().normalize();
+        String found = null;
+        try (InputStream compressed = new BufferedInputStream(Files.newInputStream(toDecompress));
+             TarArchiveInputStream is = new TarArchiveInputStream(decompressor(toDecompress, compressed))) {
+            TarArchiveEntry entry;
+            while ((entry = is.getNextTarEntry()) != null) {
+                if (binName != null) {
+                    // the shallowest match as in unZip. a tar has no index, so a shallower match read later replaces the one extracted
+                    if (entry.isFile() && isEntryOf(entry.getName(), binName)
+                            && (found == null || depth(entry.getName()) < depth(found))) {
+                        final Path out = normalizedRoot.resolve(binName);
+                        Files.copy(is, out, StandardCopyOption.REPLACE_EXISTING);
+                        applyMode(out, (entry.getMode() & 0777) != 0 ? entry.getMode() : 0755);
+                        found = entry.getName();
+                        if (depth(found) == 0) {
+                            return;
+                        }
                     }
+                    continue;
+                }
+                final Path out = normalizedRoot.resolve(entry.getName()).normalize();
+                if (!out.startsWith(normalizedRoot)) {
+                    throw new IOException("Entry outside the target directory: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(out);
+                } else if (entry.isFile()) {
+                    Files.createDirectories(out.getParent());
+                    Files.copy(is, out, StandardCopyOption.REPLACE_EXISTING);
+                    applyMode(out, entry.getMode());
+                }
+            }
+        }
+        if (binName != null && found == null) {
+            throw new IOException(binName + " not found in " + toDecompress);
+        }
+    }
+
+    private static InputStream decompressor(Path archive, InputStream compressed) throws IOException {
+        final String name = archive.getFileName().toString();
+        if (name.endsWith(".bz2")) {
+            return new BZip2CompressorInputStream(compressed);
+        } else if (name.endsWith(".xz")) {
+            if (!XZUtils.isXZCompressionAvailable()) {
+                throw new IOException("org.tukaani:xz is required in the classpath to extract " + archive);
+            }
+            return new XZCompressorInputStream(compressed);
+        }
+        return new GZIPInputStream(compressed);
+    }
+
+    /**
+     * Applies unix file mode. Only the executable bit is applied where POSIX permissions are not supported.
+     *
+     * @param path file
+     * @param mode unix file mode
+     * @throws IOException when failed to apply the mode
+     */
+    static void applyMode(Path path, int mode) throws IOException {
+        if ((mode & 0777) == 0) {
+            return;
+        }
+        if (POSIX_SUPPORTED) {
+            final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+            final PosixFilePermission[] values = PosixFilePermission.values();
+            // OWNER_READ(0400), OWNER_WRITE(0200), OWNER_EXECUTE(0100), GROUP_READ(040), ... OTHERS_EXECUTE(01)
+            for (int i = 0; i < values.length; i++) {
+                if ((mode & (0400 >> i)) != 0) {
+                    permissions.add(values[i]);
                 }
             }
-        } catch (ArchiveException e) {
-            throw new IOException(e);
+            Files.setPosixFilePermissions(path, permissions);
+        } else if ((mode & 0100) != 0) {
+            //noinspection ResultOfMethodCallIgnored
+            path.toFile().setExecutable(true);
         }
-        tarFile.delete();
     }
 
+    private static final boolean POSIX_SUPPORTED = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
     /**
      * check app path
      *
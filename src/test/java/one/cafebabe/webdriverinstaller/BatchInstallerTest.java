@@ -0,0 +1,81 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchInstallerTest {
+
+    @Test
+    void parse() {
+        final List<BatchInstaller.Item> items = BatchInstaller.parse(Arrays.asList(
+                "# comment",
+                "chrome 88.0.4324.96 /opt/chromedriver",
+                "",
+                "firefox  78-80"));
+        assertEquals("[chromedriver 88.0.4324.96, geckodriver 78, geckodriver 79, geckodriver 80]", items.toString());
+        assertEquals("/opt/chromedriver", items.get(0).installRoot);
+        assertEquals(WebDriverInstaller.getGeckoDriverHome(), items.get(1).installRoot);
+        assertThrows(IllegalArgumentException.class, () -> BatchInstaller.parse(Arrays.asList("safari 14")));
+        assertEquals("Unexpected version range: firefox 78-latest",
+                assertThrows(IllegalArgumentException.class, () -> BatchInstaller.parse(Arrays.asList("firefox 78-latest"))).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> BatchInstaller.parse(Arrays.asList("firefox 78-99999999999")));
+        assertThrows(IllegalArgumentException.class, () -> BatchInstaller.parse(Arrays.asList("firefox 91-78")));
+    }
+
+    @Test
+    void install(@TempDir Path installRoot) throws IOException {
+        try (LocalHttpServer server = new LocalHttpServer()) {
+            for (String version : Arrays.asList("87.0.4280.88", "88.0.4324.96", "89.0.4389.23")) {
+                server.put("/" + version + "/testdriver.zip", WebDriverInstallerTest.zip("testdriver", version, "testdriver.exe", version));
+            }
+            final List<BatchInstaller.Item> items = BatchInstaller.parse(Arrays.asList(
+                    "chrome 87.0.4280.88 " + installRoot,
+                    "chrome 88.0.4324.96 " + installRoot,
+                    "chrome 89.0.4389.23 " + installRoot,
+                    "chrome 90.0.4430.24 " + installRoot));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final int failures = BatchInstaller.install(items, 2,
+                    driver -> new InstallListenerTest.TestInstaller(installRoot.resolve("browser").toString(), server.url("/")),
+                    new PrintStream(out, true, "UTF-8"));
+
+            assertEquals(1, failures);
+            final List<String> report = Arrays.stream(out.toString("UTF-8").split("\\R")).collect(Collectors.toList());
+            assertEquals(5, report.size());
+            assertTrue(report.stream().anyMatch(line -> line.startsWith("chromedriver 90.0.4430.24") && line.endsWith("FAILED")));
+            assertTrue(report.get(4).startsWith("3 installed, 1 failed in "));
+            assertTrue(Files.isDirectory(installRoot.resolve("88.0.4324.96")));
+            assertFalse(Files.exists(installRoot.resolve("90.0.4430.24")));
+        }
+    }
+
+    @Test
+    void keepsVersionsInstalledEarlierInTheBatch(@TempDir Path installRoot) throws IOException {
+        System.setProperty(InstallRootCleaner.MAX_VERSIONS_PROPERTY_NAME, "1");
+        try (LocalHttpServer server = new LocalHttpServer()) {
+            for (String version : Arrays.asList("87.0.4280.88", "88.0.4324.96")) {
+                server.put("/" + version + "/testdriver.zip", WebDriverInstallerTest.zip("testdriver", version, "testdriver.exe", version));
+            }
+            final List<BatchInstaller.Item> items = BatchInstaller.parse(Arrays.asList(
+                    "chrome 87.0.4280.88 " + installRoot,
+                    "chrome 88.0.4324.96 " + installRoot));
+            assertEquals(0, BatchInstaller.install(items, 1,
+                    driver -> new InstallListenerTest.TestInstaller(installRoot.resolve("browser").toString(), server.url("/")),
+                    new PrintStream(new ByteArrayOutputStream(), true, "UTF-8")));
+            assertTrue(Files.isDirectory(installRoot.resolve("87.0.4280.88")));
+            assertTrue(Files.isDirectory(installRoot.resolve("88.0.4324.96")));
+        } finally {
+            System.clearProperty(InstallRootCleaner.MAX_VERSIONS_PROPERTY_NAME);
+        }
+    }
+}
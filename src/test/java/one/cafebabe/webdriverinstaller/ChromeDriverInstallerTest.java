@@ -17,6 +17,9 @@ package one.cafebabe.webdriverinstaller;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 
@@ -35,19 +38,37 @@ class ChromeDriverInstallerTest {
         assertTrue(versions.contains("88.0.4324.96"));
     }
 
+    @Test
+    void parseListing() throws IOException {
+        final String listing = "<?xml version='1.0' encoding='UTF-8'?>" +
+                "<ListBucketResult xmlns='http://doc.s3.amazonaws.com/2006-03-01'><Name>chromedriver</Name><Prefix></Prefix><Marker></Marker><Delimiter>/</Delimiter><IsTruncated>false</IsTruncated>" +
+                "<Contents><Key>index.html</Key><Generation>1</Generation></Contents>" +
+                "<CommonPrefixes><Prefix>2.0/</Prefix></CommonPrefixes>" +
+                "<CommonPrefixes><Prefix>icons/</Prefix></CommonPrefixes>" +
+                "<CommonPrefixes><Prefix>88.0.4324.96/</Prefix></CommonPrefixes>" +
+                "<CommonPrefixes><Prefix>89.0.4389.23/</Prefix></CommonPrefixes>" +
+                "</ListBucketResult>";
+        final List<String> versions = ChromeDriverInstaller.parseListing(new ByteArrayInputStream(listing.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Arrays.asList("2.0", "88.0.4324.96", "89.0.4389.23"), versions);
+    }
+
     @Test
     void getSuitableDriverVersion() {
         final List<String> availableVersions = Arrays.asList("2.0", "2.1", "2.10", "2.11", "2.12", "2.13", "2.14", "2.15", "2.16", "2.17", "2.18", "2.19", "2.2", "2.20", "2.21", "2.22", "2.23", "2.24", "2.25", "2.26", "2.27", "2.28", "2.29", "2.3", "2.30", "2.31", "2.32", "2.33", "2.34", "2.35", "2.36", "2.37", "2.38", "2.39", "2.4", "2.40", "2.41", "2.42", "2.43", "2.44", "2.45", "2.46", "2.5", "2.6", "2.7", "2.8", "2.9", "70.0.3538.16", "70.0.3538.67", "70.0.3538.97", "71.0.3578.137", "71.0.3578.30", "71.0.3578.33", "71.0.3578.80", "72.0.3626.69", "72.0.3626.7", "73.0.3683.20", "73.0.3683.68", "74.0.3729.6", "75.0.3770.140", "75.0.3770.8", "75.0.3770.90", "76.0.3809.12", "76.0.3809.126", "76.0.3809.25", "76.0.3809.68", "77.0.3865.10", "77.0.3865.40", "78.0.3904.105", "78.0.3904.11", "78.0.3904.70", "79.0.3945.16", "79.0.3945.36", "80.0.3987.106", "80.0.3987.16", "81.0.4044.138", "81.0.4044.20", "81.0.4044.69", "83.0.4103.14", "83.0.4103.39", "84.0.4147.30", "85.0.4183.38", "85.0.4183.83", "85.0.4183.87", "86.0.4240.22", "87.0.4280.20", "87.0.4280.87", "87.0.4280.88", "88.0.4324.27", "88.0.4324.96", "89.0.4389.23");
 
         final ChromeDriverInstaller installer = new ChromeDriverInstaller();
         assertAll(
-                () -> assertEquals("81.0.4044.69", installer.getSuitableDriverVersion(availableVersions, "82.0.4103.14"))
+                () -> assertEquals("81.0.4044.138", installer.getSuitableDriverVersion(availableVersions, "82.0.4103.14"))
                 , () -> assertEquals("88.0.4324.96", installer.getSuitableDriverVersion(availableVersions, "88.0.4324.96"))
                 , () -> assertEquals("88.0.4324.96", installer.getSuitableDriverVersion(availableVersions, "88.0.4324.104"))
 
                 , () -> assertEquals("89.0.4389.23", installer.getSuitableDriverVersion(availableVersions, "89.0.5960.49"))
 
                 , () -> assertEquals("89.0.4389.23", installer.getSuitableDriverVersion(availableVersions, "95.0.1023.00"))
+                , () -> assertEquals("71.0.3578.137", installer.getSuitableDriverVersion(availableVersions, "71.0.3578.200"))
+                // "8" must not match "88"
+                , () -> assertEquals("2.46", installer.getSuitableDriverVersion(availableVersions, "8.0.1"))
+                , () -> assertEquals("2.9", installer.getSuitableDriverVersion(availableVersions, "2.9"))
         );
         for (String listAvailableChromeDriverVersion : installer.listAvailableChromeDriverVersions()) {
             System.out.println(listAvailableChromeDriverVersion);
@@ -55,4 +76,35 @@ class ChromeDriverInstallerTest {
         System.out.println(installer.getSuitableDriverVersion(installer.listAvailableChromeDriverVersions(), "91.0.4472.114"));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void indexIsReusedWhileListingIsUnchanged() {
+        final List<String> listing = Arrays.asList("87.0.4280.88", "88.0.4324.96");
+        final VersionIndex index = ChromeDriverInstaller.index(listing);
+        assertSame(index, ChromeDriverInstaller.index(Arrays.asList("87.0.4280.88", "88.0.4324.96")));
+
+        final ChromeDriverInstaller installer = new ChromeDriverInstaller();
+        assertEquals("88.0.4324.96", installer.getSuitableDriverVersion(listing, "89.0.4389.23"));
+        // a listing updated after a new release
+        assertEquals("89.0.4389.23", installer.getSuitableDriverVersion(Arrays.asList("87.0.4280.88", "88.0.4324.96", "89.0.4389.23"), "89.0.4389.23"));
+    }
+
+    @Test
+    void versionIndex() {
+        final VersionIndex index = new VersionIndex(Arrays.asList("2.9", "2.10", "icons", "88.0.4324.27", "88.0.4324.96", "880.0.1", "89.0.4389.23"));
+        assertEquals(6, index.size());
+        assertEquals("2.10", index.get("2.10"));
+        assertNull(index.get("2.1"));
+        assertEquals("88.0.4324.96", index.latestWithPrefix(new int[]{88}));
+        assertEquals("88.0.4324.96", index.latestWithPrefix(new int[]{88, 0, 4324}));
+        assertNull(index.latestWithPrefix(new int[]{8}));
+        assertEquals("2.10", index.latestWithPrefix(new int[]{2}));
+        assertEquals("2.10", index.latestBeforeMajor(88));
+        assertEquals("89.0.4389.23", index.latestBeforeMajor(100));
+        assertNull(index.latestBeforeMajor(2));
+        assertArrayEquals(new int[]{102, 1}, VersionIndex.parse("102.1esr"));
+        assertArrayEquals(new int[]{68, 0}, VersionIndex.parse("68.0b14"));
+        assertNull(VersionIndex.parse("icons"));
+        assertNull(VersionIndex.parse("1..2"));
+    }
+}
@@ -0,0 +1,164 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloaderTest {
+    private final LocalHttpServer server = new LocalHttpServer();
+
+    DownloaderTest() throws IOException {
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    void download(@TempDir Path dir) throws IOException {
+        final byte[] content = randomBytes(3 * 1024 * 1024 + 7);
+        server.put("/driver.zip", content);
+        final Path target = dir.resolve("driver.zip");
+        Downloader.download(server.url("/driver.zip"), target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertFalse(Files.exists(Downloader.partialPath(target)));
+    }
+
+    @Test
+    void resume(@TempDir Path dir) throws IOException {
+        final byte[] content = randomBytes(1024 * 1024);
+        server.put("/driver.zip", content);
+        server.cutOffAfter = 300_000;
+        final Path target = dir.resolve("driver.zip");
+        assertThrows(IOException.class, () -> Downloader.download(server.url("/driver.zip"), target));
+        // a compressed response would hide the length of the archive, which resuming relies on
+        assertEquals("identity", server.acceptEncodings.get(0));
+        assertFalse(Files.exists(target));
+        final long partialLength = Files.size(Downloader.partialPath(target));
+        assertTrue(0 < partialLength && partialLength < content.length);
+
+        final String sha256 = Downloader.download(server.url("/driver.zip"), target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals("/driver.zip bytes=" + partialLength + "-", server.requests.get(1));
+        assertEquals(Downloader.toHex(Downloader.sha256().digest(content)), sha256);
+    }
+
+    @Test
+    void restartWhenResourceChanged(@TempDir Path dir) throws IOException {
+        final byte[] content = randomBytes(1024 * 1024);
+        server.put("/driver.zip", content);
+        server.cutOffAfter = 300_000;
+        final Path target = dir.resolve("driver.zip");
+        assertThrows(IOException.class, () -> Downloader.download(server.url("/driver.zip"), target));
+
+        // same length, different ETag
+        final byte[] updated = Arrays.copyOf(content, content.length);
+        updated[0]++;
+        server.put("/driver.zip", updated);
+        Downloader.download(server.url("/driver.zip"), target);
+        assertArrayEquals(updated, Files.readAllBytes(target));
+    }
+
+    @Test
+    void restartWhenRangeDoesNotContinuePartial(@TempDir Path dir) throws IOException {
+        final byte[] content = randomBytes(100_000);
+        server.put("/driver.zip", content);
+        final Path target = dir.resolve("driver.zip");
+        // partial file of a resource which was longer, without a validator
+        Files.write(Downloader.partialPath(target), Arrays.copyOf(content, 30_000));
+        Files.write(dir.resolve("driver.zip.part.properties"), "length=200000\n".getBytes());
+
+        Downloader.download(server.url("/driver.zip"), target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(Arrays.asList("/driver.zip bytes=30000-", "/driver.zip null"), server.requests);
+        assertFalse(Files.exists(Downloader.partialPath(target)));
+        assertFalse(Files.exists(dir.resolve("driver.zip.part.properties")));
+    }
+
+    @Test
+    void segmented(@TempDir Path dir) throws IOException {
+        final byte[] content = randomBytes(5 * 1024 * 1024 + 3);
+        server.put("/driver.zip", content);
+        final Path target = dir.resolve("driver.zip");
+        System.setProperty(Downloader.SEGMENTS_PROPERTY_NAME, "4");
+        try {
+            Downloader.download(server.url("/driver.zip"), target);
+        } finally {
+            System.clearProperty(Downloader.SEGMENTS_PROPERTY_NAME);
+        }
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(4, server.requests.size());
+        assertTrue(server.requests.contains("/driver.zip bytes=0-"));
+        assertTrue(server.requests.contains("/driver.zip bytes=3932163-5242882"));
+    }
+
+    @Test
+    void segmentedFallsBackToSingleStream(@TempDir Path dir) throws IOException {
+        final byte[] content = randomBytes(5 * 1024 * 1024);
+        server.put("/driver.zip", content);
+        server.rangeSupported = false;
+        final Path target = dir.resolve("driver.zip");
+        System.setProperty(Downloader.SEGMENTS_PROPERTY_NAME, "4");
+        try {
+            Downloader.download(server.url("/driver.zip"), target);
+        } finally {
+            System.clearProperty(Downloader.SEGMENTS_PROPERTY_NAME);
+        }
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(1, server.requests.size());
+    }
+
+    @Test
+    void checksum(@TempDir Path dir) throws IOException {
+        final byte[] content = randomBytes(100_000);
+        server.put("/driver.zip", content);
+        final String sha256 = Downloader.toHex(Downloader.sha256().digest(content));
+        final Path target = dir.resolve("driver.zip");
+        assertEquals(sha256, Downloader.download(server.url("/driver.zip"), target, sha256.toUpperCase()));
+        Files.delete(target);
+
+        final String wrong = "0" + sha256.substring(1).replace('0', '1');
+        assertThrows(IOException.class, () -> Downloader.download(server.url("/driver.zip"), target, wrong));
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(Downloader.partialPath(target)));
+    }
+
+    @Test
+    void stalledBodyTimesOut(@TempDir Path dir) {
+        server.put("/driver.zip", randomBytes(200_000));
+        server.stallBodyAfter = 50_000;
+        System.setProperty(Http.READ_TIMEOUT_PROPERTY_NAME, "500");
+        try {
+            final long start = System.nanoTime();
+            assertThrows(SocketTimeoutException.class, () -> Downloader.download(server.url("/driver.zip"), dir.resolve("driver.zip")));
+            assertTrue(System.nanoTime() - start < 2_500_000_000L);
+        } finally {
+            System.clearProperty(Http.READ_TIMEOUT_PROPERTY_NAME);
+        }
+    }
+
+    @Test
+    void isContinuation() {
+        assertTrue(Downloader.isContinuation("bytes 100-199/200", 100, 200));
+        assertFalse(Downloader.isContinuation("bytes 0-199/200", 100, 200));
+        assertFalse(Downloader.isContinuation("bytes 100-199/300", 100, 200));
+        assertFalse(Downloader.isContinuation("bytes */200", 100, 200));
+        assertFalse(Downloader.isContinuation(null, 100, 200));
+    }
+}
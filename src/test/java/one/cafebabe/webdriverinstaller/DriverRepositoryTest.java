@@ -0,0 +1,70 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DriverRepositoryTest {
+    private final LocalHttpServer server = new LocalHttpServer();
+
+    DriverRepositoryTest() throws IOException {
+    }
+
+    @AfterEach
+    void cleanUp() {
+        server.close();
+        System.clearProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME);
+    }
+
+    @Test
+    void localDirectory(@TempDir Path mirror, @TempDir Path installRoot) throws IOException {
+        Files.createDirectories(mirror.resolve("88.0.4324.27"));
+        Files.createDirectories(mirror.resolve("88.0.4324.96"));
+        Files.write(mirror.resolve("88.0.4324.96").resolve("chromedriver_linux64.zip"), WebDriverInstallerTest.zip("chromedriver", "binary"));
+        Files.write(mirror.resolve("index.html"), "not a version".getBytes(StandardCharsets.UTF_8));
+
+        for (String location : Arrays.asList(mirror.toString(), mirror.toUri().toString())) {
+            System.setProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME, location);
+            final ChromeDriverInstaller installer = new ChromeDriverInstaller();
+            final List<String> versions = installer.listAvailableChromeDriverVersions(installRoot);
+            Collections.sort(versions);
+            assertEquals(Arrays.asList("88.0.4324.27", "88.0.4324.96"), versions);
+            assertEquals("88.0.4324.96", installer.getSuitableDriverVersion(installRoot, "88.0.4324.104"));
+        }
+
+        final String url = new ChromeDriverInstaller().getDownloadURL("88.0.4324.96", "chromedriver_linux64.zip");
+        final Path installRootPath = installRoot.resolve("88.0.4324.96");
+        final Path bin = installRootPath.resolve("chromedriver");
+        WebDriverInstaller.download(url, installRootPath.resolve("chromedriver_linux64.zip"), installRootPath, bin, null);
+        assertEquals("binary", new String(Files.readAllBytes(bin), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void httpMirror(@TempDir Path installRoot) {
+        server.put("/mirror/", ("<ListBucketResult><CommonPrefixes><Prefix>88.0.4324.96/</Prefix></CommonPrefixes>" +
+                "<CommonPrefixes><Prefix>89.0.4389.23/</Prefix></CommonPrefixes></ListBucketResult>").getBytes(StandardCharsets.UTF_8));
+        System.setProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME, server.url("/mirror/"));
+        final ChromeDriverInstaller installer = new ChromeDriverInstaller();
+        assertEquals(Arrays.asList("88.0.4324.96", "89.0.4389.23"), installer.listAvailableChromeDriverVersions(installRoot));
+        assertEquals(server.url("/mirror/88.0.4324.96/chromedriver_linux64.zip"), installer.getDownloadURL("88.0.4324.96", "chromedriver_linux64.zip"));
+        assertEquals(Collections.singletonList("/mirror/ null"), server.requests);
+    }
+
+    @Test
+    void geckodriverHasNoListing() {
+        final DriverRepository repository = DriverRepository.of("https://github.com/mozilla/geckodriver/releases/download", null, null);
+        assertEquals("https://github.com/mozilla/geckodriver/releases/download/v0.29.0/geckodriver-v0.29.0-linux64.tar.gz",
+                repository.getArchiveURL("v0.29.0", "geckodriver-v0.29.0-linux64.tar.gz"));
+        assertThrows(IOException.class, () -> repository.listVersions(null, 0));
+    }
+}
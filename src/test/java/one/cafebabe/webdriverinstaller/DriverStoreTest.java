@@ -0,0 +1,86 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DriverStoreTest {
+    private final LocalHttpServer server = new LocalHttpServer();
+
+    DriverStoreTest() throws IOException {
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void downloadedOncePerMachine(@TempDir Path dir) throws IOException {
+        server.put("/88.0.4324.96/chromedriver_linux64.zip", WebDriverInstallerTest.zip("chromedriver", "binary"));
+        final String url = server.url("/88.0.4324.96/chromedriver_linux64.zip");
+        final DriverStore store = new DriverStore(dir.resolve("store"));
+
+        final Path workspace1 = dir.resolve("workspace1").resolve("88.0.4324.96");
+        final Path workspace2 = dir.resolve("workspace2").resolve("88.0.4324.96");
+        assertFalse(store.install("chromedriver", "88.0.4324.96", url, "chromedriver_linux64.zip", "chromedriver", null, workspace1));
+        assertTrue(store.install("chromedriver", "88.0.4324.96", url, "chromedriver_linux64.zip", "chromedriver", null, workspace2));
+        // restarted
+        new DriverStore(dir.resolve("store")).install("chromedriver", "88.0.4324.96", url, "chromedriver_linux64.zip", "chromedriver", null, workspace2);
+
+        assertEquals(1, server.requests.size());
+        assertEquals("binary", new String(Files.readAllBytes(workspace2.resolve("chromedriver")), StandardCharsets.UTF_8));
+        assertTrue(Files.isExecutable(workspace1.resolve("chromedriver")));
+        assertTrue(Files.isSameFile(workspace1.resolve("chromedriver"), workspace2.resolve("chromedriver")));
+        assertFalse(Files.exists(dir.resolve("workspace1").resolve("88.0.4324.96.tmp")));
+    }
+
+    @Test
+    void staleEntryIsRefetched(@TempDir Path dir) throws IOException {
+        server.put("/88.0.4324.96/chromedriver_linux64.zip", WebDriverInstallerTest.zip("chromedriver", "binary"));
+        final String url = server.url("/88.0.4324.96/chromedriver_linux64.zip");
+        final DriverStore store = new DriverStore(dir.resolve("store"));
+        store.install("chromedriver", "88.0.4324.96", url, "chromedriver_linux64.zip", "chromedriver", null, dir.resolve("workspace1"));
+        WebDriverInstaller.deleteRecursively(dir.resolve("store").resolve("objects"));
+
+        store.install("chromedriver", "88.0.4324.96", url, "chromedriver_linux64.zip", "chromedriver", null, dir.resolve("workspace2"));
+        assertEquals(2, server.requests.size());
+        assertTrue(Files.exists(dir.resolve("workspace2").resolve("chromedriver")));
+    }
+
+    @Test
+    void sameArchiveFromDifferentUrlsConcurrently(@TempDir Path dir) throws Exception {
+        final byte[] archive = WebDriverInstallerTest.zip("chromedriver", "binary");
+        final DriverStore store = new DriverStore(dir.resolve("store"));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> installs = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                server.put("/mirror" + i + "/chromedriver_linux64.zip", archive);
+                final String url = server.url("/mirror" + i + "/chromedriver_linux64.zip");
+                final Path workspace = dir.resolve("workspace" + i).resolve("88.0.4324.96");
+                installs.add(executor.submit(() -> store.install("chromedriver", "88.0.4324.96", url, "chromedriver_linux64.zip", "chromedriver", null, workspace)));
+            }
+            for (Future<Boolean> install : installs) {
+                install.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals("binary", new String(Files.readAllBytes(dir.resolve("workspace" + i).resolve("88.0.4324.96").resolve("chromedriver")), StandardCharsets.UTF_8));
+        }
+    }
+}
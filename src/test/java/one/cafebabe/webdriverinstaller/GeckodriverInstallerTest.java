@@ -1,11 +1,45 @@
 package one.cafebabe.webdriverinstaller;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class GeckodriverInstallerTest {
 
+    @Test
+    void versionTableRefreshedInBackground(@TempDir Path installRoot) throws IOException, InterruptedException {
+        try (LocalHttpServer server = new LocalHttpServer()) {
+            server.put("/gecko-versions.properties", "gecko-versions=v0.29.1<78,v0.99.0<999".getBytes(StandardCharsets.ISO_8859_1));
+            server.put("/broken.properties", "gecko-versions=<html>".getBytes(StandardCharsets.ISO_8859_1));
+            System.setProperty(GeckoVersionTable.URL_PROPERTY_NAME, server.url("/gecko-versions.properties"));
+            try {
+                final GeckodriverInstaller installer = new GeckodriverInstaller();
+                // bundled table is used while fetching
+                assertEquals("v0.33.0", installer.getSuitableDriverVersion(installRoot, "105.0"));
+                assertFalse(installer.versionsFromCache);
+                final Path persisted = installRoot.resolve(GeckoVersionTable.FILE_NAME);
+                for (int i = 0; i < 100 && !Files.exists(persisted); i++) {
+                    Thread.sleep(50);
+                }
+                assertEquals("v0.99.0", installer.getSuitableDriverVersion(installRoot, "105.0"));
+                assertEquals(1, server.requests.size());
+                assertTrue(installer.versionsFromCache);
+
+                System.setProperty(GeckoVersionTable.URL_PROPERTY_NAME, server.url("/broken.properties"));
+                assertThrows(IOException.class, () -> GeckoVersionTable.refresh(persisted));
+                assertEquals("v0.99.0", installer.getSuitableDriverVersion(installRoot, "105.0"));
+            } finally {
+                System.clearProperty(GeckoVersionTable.URL_PROPERTY_NAME);
+            }
+        }
+    }
+
     @Test
     void getGeckoDriverVersionFromFirefoxVersion() {
         // https://firefox-source-docs.mozilla.org/testing/geckodriver/Support.html
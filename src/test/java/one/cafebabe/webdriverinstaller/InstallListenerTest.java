@@ -0,0 +1,145 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstallListenerTest {
+    private final LocalHttpServer server = new LocalHttpServer();
+    private final List<InstallEvent> events = new CopyOnWriteArrayList<>();
+    private final InstallListener listener = events::add;
+
+    InstallListenerTest() throws IOException {
+        WebDriverInstaller.addInstallListener(listener);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        WebDriverInstaller.removeInstallListener(listener);
+        server.close();
+    }
+
+    @Test
+    void phases(@TempDir Path installRoot) throws IOException {
+        server.put("/88.0.4324.96/testdriver.zip", WebDriverInstallerTest.zip("testdriver", "binary", "testdriver.exe", "binary"));
+        final Path app = Files.write(installRoot.resolve("browser"), "binary".getBytes());
+        final TestInstaller installer = new TestInstaller(app.toString(), server.url("/"));
+        assertTrue(installer.ensureInstalled(installRoot.toString()).isPresent());
+
+        assertEquals("[PROBE, RESOLVE, DOWNLOAD, DECOMPRESS, INSTALL]",
+                events.stream().map(InstallEvent::getPhase).collect(Collectors.toList()).toString());
+        for (InstallEvent event : events) {
+            assertEquals("testdriver", event.getDriverName());
+            assertTrue(event.isSuccess());
+            assertFalse(event.isCacheHit());
+            assertFalse(event.getDuration().isNegative());
+        }
+        assertEquals("88.0.4324.96", events.get(0).getVersion());
+        assertEquals(Files.size(installRoot.resolve("88.0.4324.96").resolve("testdriver.zip")), events.get(2).getBytes());
+        // only the binary is extracted
+        assertEquals("binary".length(), events.get(3).getBytes());
+
+        // already installed, probed from the cache
+        events.clear();
+        assertTrue(new TestInstaller(app.toString(), server.url("/")).ensureInstalled(installRoot.toString()).isPresent());
+        assertEquals("[PROBE, RESOLVE, INSTALL]", events.stream().map(InstallEvent::getPhase).collect(Collectors.toList()).toString());
+        assertTrue(events.get(0).isCacheHit());
+        // resolved from the listing kept in the install root
+        assertTrue(events.get(1).isCacheHit());
+        assertTrue(events.get(2).isCacheHit());
+    }
+
+    @Test
+    void failingListenerIsIgnored(@TempDir Path installRoot) throws IOException {
+        final InstallListener failing = event -> {
+            throw new IllegalStateException("failing listener");
+        };
+        WebDriverInstaller.addInstallListener(failing);
+        try {
+            final Path app = Files.write(installRoot.resolve("browser"), "binary".getBytes());
+            // nothing served
+            new TestInstaller(app.toString(), server.url("/")).ensureInstalled(installRoot.toString());
+            assertFalse(events.isEmpty());
+            final InstallEvent download = events.stream().filter(event -> event.getPhase() == InstallEvent.Phase.DOWNLOAD).findFirst().orElseThrow(AssertionError::new);
+            assertFalse(download.isSuccess());
+            assertFalse(events.get(events.size() - 1).isSuccess());
+        } finally {
+            WebDriverInstaller.removeInstallListener(failing);
+        }
+    }
+
+    /**
+     * installer of testdriver, whose archives are served by the specified url
+     */
+    static class TestInstaller extends WebDriverInstaller {
+        private final String appPath;
+        private final String baseURL;
+
+        TestInstaller(String appPath, String baseURL) {
+            super("webdriver.test.driver", "Test Browser", "testdriver", "browser", appPath, "browser.exe");
+            this.appPath = appPath;
+            this.baseURL = baseURL;
+        }
+
+        @Override
+        protected String getAppPath(String name) {
+            return appPath;
+        }
+
+        @Override
+        protected String getAppVersion(String appPath) {
+            return "Test Browser 88.0.4324.96";
+        }
+
+        @Override
+        String getSuitableDriverVersion(String browserVersion) {
+            return browserVersion;
+        }
+
+        @Override
+        String getSuitableDriverVersion(Path installRoot, String browserVersion) {
+            // listed once, and kept in the install root like ChromeDriverInstaller does
+            final ListingCache cache = ListingCache.load(installRoot.resolve("testdriver-versions.properties"));
+            if (cache.isFresh(Long.MAX_VALUE)) {
+                cache.serve();
+            } else {
+                try {
+                    cache.update(Collections.singletonList(browserVersion), null, null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            versionsFromCache = cache.isServed();
+            return browserVersion;
+        }
+
+        @NotNull
+        @Override
+        String toFileName(String version, OS os) {
+            return "testdriver.zip";
+        }
+
+        @Override
+        String getChecksumConfig() {
+            return null;
+        }
+
+        @NotNull
+        @Override
+        String getDownloadURL(String version, String fileName) {
+            return baseURL + version + "/" + fileName;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstallLockTest {
+
+    @Test
+    void mutualExclusion(@TempDir Path dir) throws Exception {
+        final Path lockFile = dir.resolve("88.0.4324.96.lock");
+        final AtomicInteger holders = new AtomicInteger();
+        final AtomicInteger maxHolders = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> {
+                    try (InstallLock ignored = InstallLock.acquire(lockFile)) {
+                        maxHolders.accumulateAndGet(holders.incrementAndGet(), Math::max);
+                        Thread.sleep(2);
+                        holders.decrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, maxHolders.get());
+    }
+
+    @Test
+    void holdsFileLock(@TempDir Path dir) throws Exception {
+        final Path lockFile = dir.resolve("sub").resolve("0.29.0.lock");
+        try (InstallLock ignored = InstallLock.acquire(lockFile);
+             FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            // the file is locked on behalf of this JVM
+            assertThrows(OverlappingFileLockException.class, channel::tryLock);
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            assertNotNull(channel.tryLock());
+        }
+    }
+}
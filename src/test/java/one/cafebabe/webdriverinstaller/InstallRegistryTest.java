@@ -0,0 +1,138 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstallRegistryTest {
+
+    @AfterEach
+    void invalidate() {
+        InstallRegistry.invalidate();
+    }
+
+    @Test
+    void resolvedOnce(@TempDir Path installRoot) throws IOException {
+        final String bin = Files.write(installRoot.resolve("chromedriver"), "binary".getBytes()).toString();
+        final AtomicInteger resolutions = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Optional.of(bin), InstallRegistry.resolve("chromedriver", installRoot.toString(), () -> {
+                resolutions.incrementAndGet();
+                return Optional.of(bin);
+            }));
+        }
+        assertEquals(1, resolutions.get());
+
+        // keyed by driver and install root
+        InstallRegistry.resolve("geckodriver", installRoot.toString(), () -> {
+            resolutions.incrementAndGet();
+            return Optional.of(bin);
+        });
+        assertEquals(2, resolutions.get());
+
+        InstallRegistry.invalidate();
+        InstallRegistry.resolve("chromedriver", installRoot.resolve(".").toString(), () -> {
+            resolutions.incrementAndGet();
+            return Optional.of(bin);
+        });
+        assertEquals(3, resolutions.get());
+    }
+
+    @Test
+    void deletedBinaryIsResolvedAgain(@TempDir Path installRoot) throws IOException {
+        final Path bin = Files.write(installRoot.resolve("chromedriver"), "binary".getBytes());
+        final AtomicInteger resolutions = new AtomicInteger();
+        final Supplier<Optional<String>> installer = () -> {
+            resolutions.incrementAndGet();
+            try {
+                return Optional.of(Files.write(bin, "binary".getBytes()).toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        InstallRegistry.resolve("chromedriver", installRoot.toString(), installer);
+        InstallRegistry.resolve("chromedriver", installRoot.toString(), installer);
+        assertEquals(1, resolutions.get());
+
+        // evicted by another JVM
+        Files.delete(bin);
+        assertEquals(Optional.of(bin.toString()), InstallRegistry.resolve("chromedriver", installRoot.toString(), installer));
+        assertEquals(2, resolutions.get());
+        assertTrue(Files.exists(bin));
+    }
+
+    @Test
+    void sharedResolutionIsNotRemembered(@TempDir Path installRoot) throws IOException {
+        final String bin = Files.write(installRoot.resolve("chromedriver"), "binary".getBytes()).toString();
+        final AtomicInteger resolutions = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Optional.of(bin), InstallRegistry.resolveShared("chromedriver", installRoot.toString(), () -> {
+                resolutions.incrementAndGet();
+                return Optional.of(bin);
+            }));
+        }
+        assertEquals(3, resolutions.get());
+    }
+
+    @Test
+    void failuresAreRetried(@TempDir Path installRoot) {
+        final AtomicInteger resolutions = new AtomicInteger();
+        assertEquals(Optional.empty(), InstallRegistry.resolve("chromedriver", installRoot.toString(), () -> {
+            resolutions.incrementAndGet();
+            return Optional.empty();
+        }));
+        // path returned, but not installed
+        InstallRegistry.resolve("chromedriver", installRoot.toString(), () -> {
+            resolutions.incrementAndGet();
+            return Optional.of(installRoot.resolve("chromedriver").toString());
+        });
+        assertThrows(IllegalStateException.class, () -> InstallRegistry.resolve("chromedriver", installRoot.toString(), () -> {
+            resolutions.incrementAndGet();
+            throw new IllegalStateException("offline");
+        }));
+        InstallRegistry.resolve("chromedriver", installRoot.toString(), () -> {
+            resolutions.incrementAndGet();
+            return Optional.empty();
+        });
+        assertEquals(4, resolutions.get());
+    }
+
+    @Test
+    void concurrentCallersShareResolution(@TempDir Path installRoot) throws IOException {
+        final String bin = Files.write(installRoot.resolve("chromedriver"), "binary".getBytes()).toString();
+        final AtomicInteger resolutions = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<Optional<String>> first = CompletableFuture.supplyAsync(() -> InstallRegistry.resolve("chromedriver", installRoot.toString(), () -> {
+            resolutions.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return Optional.of(bin);
+        }));
+        assertDoesNotThrow(() -> started.await());
+        final CompletableFuture<Optional<String>> second = CompletableFuture.supplyAsync(() -> InstallRegistry.resolve("chromedriver", installRoot.toString(), () -> {
+            resolutions.incrementAndGet();
+            return Optional.of(bin);
+        }));
+        release.countDown();
+        assertEquals(Optional.of(bin), first.join());
+        assertEquals(Optional.of(bin), second.join());
+        assertEquals(1, resolutions.get());
+    }
+}
@@ -0,0 +1,95 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstallRootCleanerTest {
+
+    private static Path version(Path installRoot, String version, int size, long lastUsed) throws IOException {
+        final Path path = Files.createDirectories(installRoot.resolve(version));
+        Files.write(path.resolve("chromedriver"), new byte[size]);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(lastUsed));
+        return path;
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed(@TempDir Path installRoot) throws IOException {
+        final long now = System.currentTimeMillis();
+        final Path current = version(installRoot, "86.0.4240.22", 10, now - 40_000);
+        final Path locked = version(installRoot, "87.0.4280.20", 10, now - 30_000);
+        final Path old = version(installRoot, "87.0.4280.88", 10, now - 20_000);
+        final Path recent = version(installRoot, "88.0.4324.96", 10, now - 10_000);
+        Files.createDirectories(installRoot.resolve("89.0.4389.23.tmp"));
+
+        try (InstallLock ignored = InstallLock.acquire(installRoot.resolve("87.0.4280.20.lock"))) {
+            assertEquals(1, new InstallRootCleaner(3, 0, 0).clean(installRoot, "86.0.4240.22", "chromedriver"));
+        }
+        assertTrue(Files.exists(current));
+        assertTrue(Files.exists(locked));
+        assertFalse(Files.exists(old));
+        assertTrue(Files.exists(recent));
+        // left by an interrupted install
+        assertFalse(Files.exists(installRoot.resolve("89.0.4389.23.tmp")));
+
+        // 30 bytes left, over the budget of 25 bytes
+        assertEquals(1, new InstallRootCleaner(0, 25, 0).clean(installRoot, "86.0.4240.22", "chromedriver"));
+        assertTrue(Files.exists(current));
+        assertFalse(Files.exists(locked));
+        assertTrue(Files.exists(recent));
+    }
+
+    @Test
+    void keepsVersionsUsedWithinGracePeriod(@TempDir Path installRoot) throws IOException {
+        final long now = System.currentTimeMillis();
+        final Path old = version(installRoot, "86.0.4240.22", 10, now - 7_200_000);
+        final Path usedByAnotherJvm = version(installRoot, "87.0.4280.88", 10, now - 60_000);
+        final Path current = version(installRoot, "88.0.4324.96", 10, now);
+
+        assertEquals(1, new InstallRootCleaner(1, 0, 3_600_000).clean(installRoot, "88.0.4324.96", "chromedriver"));
+        assertFalse(Files.exists(old));
+        assertTrue(Files.exists(usedByAnotherJvm));
+        assertTrue(Files.exists(current));
+    }
+
+    @Test
+    void collectsLeftoversOfInterruptedInstalls(@TempDir Path installRoot) throws IOException {
+        final long now = System.currentTimeMillis();
+        version(installRoot, "88.0.4324.96", 10, now);
+        final Path staleLock = Files.createFile(installRoot.resolve("86.0.4240.22.lock"));
+        final Path staging = Files.createDirectories(installRoot.resolve("87.0.4280.88.tmp"));
+        final Path writing = Files.createDirectories(installRoot.resolve("90.0.4430.24.tmp"));
+        Files.setLastModifiedTime(staleLock, FileTime.fromMillis(now - 7_200_000));
+
+        try (InstallLock ignored = InstallLock.acquire(installRoot.resolve("90.0.4430.24.lock"))) {
+            assertEquals(0, new InstallRootCleaner(5, 0, 3_600_000).clean(installRoot, "88.0.4324.96", "chromedriver"));
+        }
+        // lock files are never deleted, as waiters may hold them open
+        assertTrue(Files.exists(staleLock));
+        assertFalse(Files.exists(staging));
+        assertTrue(Files.exists(writing));
+    }
+
+    @Test
+    void disabledByDefault(@TempDir Path installRoot) throws IOException {
+        version(installRoot, "87.0.4280.88", 10, 0);
+        assertFalse(InstallRootCleaner.fromConfig().isEnabled());
+        assertEquals(0, InstallRootCleaner.fromConfig().clean(installRoot, "88.0.4324.96", "chromedriver"));
+    }
+
+    @Test
+    void invalidBudgetIsIgnored() {
+        System.setProperty(InstallRootCleaner.MAX_SIZE_PROPERTY_NAME, "10MB");
+        try {
+            assertFalse(InstallRootCleaner.fromConfig().isEnabled());
+        } finally {
+            System.clearProperty(InstallRootCleaner.MAX_SIZE_PROPERTY_NAME);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListingCacheTest {
+    private final LocalHttpServer server = new LocalHttpServer();
+
+    ListingCacheTest() throws IOException {
+    }
+
+    @AfterEach
+    void cleanUp() {
+        server.close();
+        System.clearProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME);
+        System.clearProperty(ChromeDriverInstaller.LISTING_TTL_PROPERTY_NAME);
+    }
+
+    @Test
+    void emptyWhenMissing(@TempDir Path dir) {
+        final ListingCache cache = ListingCache.load(dir.resolve("missing.properties"));
+        assertTrue(cache.isEmpty());
+        assertFalse(cache.isFresh(Long.MAX_VALUE));
+        assertNull(cache.getEtag());
+    }
+
+    @Test
+    void roundTrip(@TempDir Path dir) throws IOException {
+        final Path file = dir.resolve("sub").resolve("chromedriver-versions.properties");
+        ListingCache.load(file).update(Arrays.asList("2.0", "88.0.4324.96"), "\"abc\"", "Wed, 21 Oct 2015 07:28:00 GMT");
+
+        final ListingCache loaded = ListingCache.load(file);
+        assertEquals(Arrays.asList("2.0", "88.0.4324.96"), loaded.getVersions());
+        assertEquals("\"abc\"", loaded.getEtag());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", loaded.getLastModified());
+        assertTrue(loaded.isFresh(60_000));
+        assertFalse(loaded.isFresh(0));
+    }
+
+    @Test
+    void brokenFileIsIgnored(@TempDir Path dir) throws IOException {
+        final Path file = dir.resolve("chromedriver-versions.properties");
+        Files.write(file, "versions=1.0\nfetched-at=not-a-number\n".getBytes());
+        assertTrue(ListingCache.load(file).isEmpty());
+    }
+
+    @Test
+    void revalidatedWithConditionalGet(@TempDir Path installRoot) throws IOException {
+        server.put("/mirror/", "<ListBucketResult><CommonPrefixes><Prefix>88.0.4324.96/</Prefix></CommonPrefixes></ListBucketResult>".getBytes(StandardCharsets.UTF_8));
+        System.setProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME, server.url("/mirror/"));
+        final ChromeDriverInstaller installer = new ChromeDriverInstaller();
+        assertEquals(Collections.singletonList("88.0.4324.96"), installer.listAvailableChromeDriverVersions(installRoot));
+        assertFalse(installer.versionsFromCache);
+        final ListingCache cached = ListingCache.load(installRoot.resolve(ChromeDriverInstaller.LISTING_CACHE_FILE_NAME));
+        assertNotNull(cached.getEtag());
+
+        // within TTL, no request
+        assertEquals(Collections.singletonList("88.0.4324.96"), installer.listAvailableChromeDriverVersions(installRoot));
+        assertEquals(1, server.requests.size());
+        assertTrue(installer.versionsFromCache);
+
+        // expired, revalidated with If-None-Match
+        System.setProperty(ChromeDriverInstaller.LISTING_TTL_PROPERTY_NAME, "0");
+        assertEquals(Collections.singletonList("88.0.4324.96"), installer.listAvailableChromeDriverVersions(installRoot));
+        assertEquals(2, server.requests.size());
+        assertEquals(1, server.notModified.get());
+        assertTrue(installer.versionsFromCache);
+        assertEquals(cached.getEtag(), ListingCache.load(installRoot.resolve(ChromeDriverInstaller.LISTING_CACHE_FILE_NAME)).getEtag());
+
+        // modified
+        server.put("/mirror/", ("<ListBucketResult><CommonPrefixes><Prefix>88.0.4324.96/</Prefix></CommonPrefixes>" +
+                "<CommonPrefixes><Prefix>89.0.4389.23/</Prefix></CommonPrefixes></ListBucketResult>").getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("88.0.4324.96", "89.0.4389.23"), installer.listAvailableChromeDriverVersions(installRoot));
+        assertEquals(1, server.notModified.get());
+        assertFalse(installer.versionsFromCache);
+    }
+
+    @Test
+    void listingOfPreviousRepositoryIsDiscarded(@TempDir Path installRoot) throws IOException {
+        server.put("/old/", "<ListBucketResult><CommonPrefixes><Prefix>88.0.4324.96/</Prefix></CommonPrefixes></ListBucketResult>".getBytes(StandardCharsets.UTF_8));
+        server.put("/new/", "<ListBucketResult><CommonPrefixes><Prefix>89.0.4389.23/</Prefix></CommonPrefixes></ListBucketResult>".getBytes(StandardCharsets.UTF_8));
+        System.setProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME, server.url("/old/"));
+        assertEquals(Collections.singletonList("88.0.4324.96"), new ChromeDriverInstaller().listAvailableChromeDriverVersions(installRoot));
+
+        // within TTL of the old listing
+        System.setProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME, server.url("/new/"));
+        assertEquals(Collections.singletonList("89.0.4389.23"), new ChromeDriverInstaller().listAvailableChromeDriverVersions(installRoot));
+        assertTrue(ListingCache.load(installRoot.resolve(ChromeDriverInstaller.LISTING_CACHE_FILE_NAME)).getSource().startsWith(server.url("/new/")));
+
+        // validators of the new listing are never sent to the old repository
+        System.setProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME, server.url("/old/"));
+        System.setProperty(ChromeDriverInstaller.LISTING_TTL_PROPERTY_NAME, "0");
+        assertEquals(Collections.singletonList("88.0.4324.96"), new ChromeDriverInstaller().listAvailableChromeDriverVersions(installRoot));
+        assertEquals(0, server.notModified.get());
+    }
+
+    @Test
+    void invalidTtlFallsBackToDefault() {
+        System.setProperty(ChromeDriverInstaller.LISTING_TTL_PROPERTY_NAME, "one hour");
+        assertEquals(3600, ChromeDriverInstaller.getListingTtlSeconds());
+        System.setProperty(ChromeDriverInstaller.LISTING_TTL_PROPERTY_NAME, "60");
+        assertEquals(60, ChromeDriverInstaller.getListingTtlSeconds());
+    }
+}
@@ -0,0 +1,159 @@
+package one.cafebabe.webdriverinstaller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * in-process HTTP server serving fixtures, with ETag, conditional GET and Range support, and fault injection
+ */
+class LocalHttpServer implements Closeable {
+    private final HttpServer server;
+    private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+    /**
+     * requests received, "path range-header"
+     */
+    final List<String> requests = new CopyOnWriteArrayList<>();
+    /**
+     * Accept-Encoding header of each request, "identity" if absent
+     */
+    final List<String> acceptEncodings = new CopyOnWriteArrayList<>();
+    /**
+     * when set, the response body is cut off after this many bytes once, simulating a dropped connection
+     */
+    volatile int cutOffAfter = -1;
+    volatile boolean rangeSupported = true;
+    /**
+     * number of requests to be answered with 503 Service Unavailable before serving contents
+     */
+    final AtomicInteger failures = new AtomicInteger();
+    /**
+     * when set, the response to the next request is delayed this many milliseconds once, simulating a congested connection
+     */
+    volatile long stallFor = -1;
+    /**
+     * when set, the response body stalls for 3 seconds after this many bytes once, simulating a connection that stopped delivering data
+     */
+    volatile int stallBodyAfter = -1;
+    /**
+     * number of conditional requests answered with 304 Not Modified
+     */
+    final AtomicInteger notModified = new AtomicInteger();
+
+    LocalHttpServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    void put(String path, byte[] content) {
+        contents.put(path, content);
+    }
+
+    String url(String path) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            requests.add(path + " " + range);
+            final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            acceptEncodings.add(acceptEncoding != null ? acceptEncoding : "identity");
+            if (0 < failures.getAndUpdate(remaining -> Math.max(0, remaining - 1))) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            final long stall = stallFor;
+            if (0 <= stall) {
+                stallFor = -1;
+                try {
+                    Thread.sleep(stall);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final byte[] body = contents.get(path);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final String etag = "\"" + body.length + "-" + Arrays.hashCode(body) + "\"";
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            int start = 0;
+            int end = body.length - 1;
+            final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (rangeSupported && range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(etag))) {
+                exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+                final String[] startEnd = range.substring("bytes=".length()).split("-", -1);
+                start = Integer.parseInt(startEnd[0]);
+                if (!startEnd[1].isEmpty()) {
+                    end = Math.min(end, Integer.parseInt(startEnd[1]));
+                }
+                if (body.length <= start) {
+                    exchange.getResponseHeaders().add("Content-Range", "bytes */" + body.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+                exchange.sendResponseHeaders(206, end - start + 1);
+            } else {
+                if (rangeSupported) {
+                    exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+            }
+            try (OutputStream os = exchange.getResponseBody()) {
+                int length = end - start + 1;
+                final int cutOff = cutOffAfter;
+                if (0 <= cutOff && cutOff < length) {
+                    cutOffAfter = -1;
+                    os.write(body, start, cutOff);
+                    os.flush();
+                    // drop the connection without completing the body
+                    throw new IOException("cut off");
+                }
+                final int stallAfter = stallBodyAfter;
+                if (0 <= stallAfter && stallAfter < length) {
+                    stallBodyAfter = -1;
+                    os.write(body, start, stallAfter);
+                    os.flush();
+                    try {
+                        Thread.sleep(3_000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    start += stallAfter;
+                    length -= stallAfter;
+                }
+                os.write(body, start, length);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,68 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefetcherTest {
+    private final LocalHttpServer server = new LocalHttpServer();
+
+    PrefetcherTest() throws IOException {
+    }
+
+    @AfterEach
+    void cleanUp() {
+        server.close();
+        System.clearProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME);
+    }
+
+    @Test
+    void fileNames() {
+        final GeckodriverInstaller gecko = new GeckodriverInstaller();
+        assertEquals("geckodriver-v0.30.0-macos.tar.gz", gecko.toFileName("v0.30.0", WebDriverInstaller.OS.MAC));
+        assertEquals("geckodriver-v0.30.0-win64.zip", gecko.toFileName("v0.30.0", WebDriverInstaller.OS.WINDOWS64));
+        final ChromeDriverInstaller chrome = new ChromeDriverInstaller();
+        assertEquals("chromedriver_linux64.zip", chrome.toFileName("88.0.4324.96", WebDriverInstaller.OS.LINUX64));
+        assertEquals("chromedriver_win32.zip", chrome.toFileName("88.0.4324.96", WebDriverInstaller.OS.WINDOWS64));
+    }
+
+    @Test
+    void prefetch(@TempDir Path cache) throws IOException {
+        for (String platform : Arrays.asList("linux64", "mac64", "win32")) {
+            server.put("/88.0.4324.96/chromedriver_" + platform + ".zip", WebDriverInstallerTest.zip("chromedriver", platform));
+        }
+        System.setProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME, server.url("/"));
+        final ChromeDriverInstaller installer = new ChromeDriverInstaller();
+        final List<Path> archives = Prefetcher.prefetch(installer, "88.0.4324.96",
+                EnumSet.of(WebDriverInstaller.OS.LINUX64, WebDriverInstaller.OS.MAC, WebDriverInstaller.OS.WINDOWS64), cache, 3);
+
+        assertEquals(Arrays.asList(
+                cache.resolve("mac").resolve("88.0.4324.96").resolve("chromedriver_mac64.zip"),
+                cache.resolve("linux64").resolve("88.0.4324.96").resolve("chromedriver_linux64.zip"),
+                cache.resolve("windows64").resolve("88.0.4324.96").resolve("chromedriver_win32.zip")), archives);
+        for (Path archive : archives) {
+            assertTrue(Files.exists(archive.resolveSibling(archive.getFileName() + ".sha256")));
+        }
+        assertEquals(3, server.requests.size());
+
+        // already cached
+        Prefetcher.prefetch(installer, "88.0.4324.96", EnumSet.of(WebDriverInstaller.OS.MAC), cache, 1);
+        assertEquals(3, server.requests.size());
+
+        // usable as a repository on agents
+        System.setProperty(ChromeDriverInstaller.REPOSITORY_PROPERTY_NAME, cache.resolve("mac").toString());
+        assertEquals(Collections.singletonList("88.0.4324.96"), new ChromeDriverInstaller().listAvailableChromeDriverVersions(cache.resolve("agent")));
+
+        assertThrows(IOException.class, () -> Prefetcher.prefetch(new ChromeDriverInstaller(), "89.0.4389.23", EnumSet.of(WebDriverInstaller.OS.LINUX32), cache, 1));
+    }
+}
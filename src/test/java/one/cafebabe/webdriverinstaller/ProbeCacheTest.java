@@ -0,0 +1,111 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProbeCacheTest {
+
+    @Test
+    void invalidatedWhenBinaryChanges(@TempDir Path dir) throws IOException {
+        final Path app = Files.write(dir.resolve("google-chrome"), "v1".getBytes());
+        final Path file = dir.resolve(ProbeCache.FILE_NAME);
+        final ProbeCache cache = ProbeCache.load(file);
+        assertNull(cache.getVersion(app.toString()));
+        cache.putAppPath("google-chrome", app.toString());
+        cache.putVersion(app.toString(), "88.0.4324.96");
+        cache.save();
+
+        final ProbeCache loaded = ProbeCache.load(file);
+        assertEquals(app.toString(), loaded.getAppPath("google-chrome"));
+        assertEquals("88.0.4324.96", loaded.getVersion(app.toString()));
+
+        // upgraded
+        Files.write(app, "v2.0".getBytes());
+        Files.setLastModifiedTime(app, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertNull(ProbeCache.load(file).getVersion(app.toString()));
+
+        Files.delete(app);
+        assertNull(ProbeCache.load(file).getAppPath("google-chrome"));
+    }
+
+    @Test
+    void expiresAfterMaxAge(@TempDir Path dir) throws IOException {
+        // e.g. /snap/bin/firefox resolves to /usr/bin/snap, which doesn't change when Firefox is refreshed
+        final Path app = Files.write(dir.resolve("firefox"), "snap shim".getBytes());
+        final Path file = dir.resolve(ProbeCache.FILE_NAME);
+        final ProbeCache cache = ProbeCache.load(file);
+        cache.putVersion(app.toString(), "85.0");
+        cache.save();
+        assertEquals("85.0", ProbeCache.load(file, 60_000).getVersion(app.toString()));
+        assertNull(ProbeCache.load(file, 0).getVersion(app.toString()));
+    }
+
+    @Test
+    void noProcessSpawnedOnceCached(@TempDir Path dir) throws IOException {
+        final Path app = Files.write(dir.resolve("browser"), "binary".getBytes());
+        final CountingInstaller installer = new CountingInstaller(app.toString());
+        assertEquals(Optional.of("88.0.4324.96"), installer.getInstalledAppVersion(dir));
+        assertEquals(Optional.of("88.0.4324.96"), installer.getInstalledAppVersion(dir));
+        assertEquals(1, installer.versionProbes.get());
+        assertTrue(installer.pathProbes.get() <= 1);
+
+        // without cache directory, always probes
+        assertEquals(Optional.of("88.0.4324.96"), installer.getInstalledAppVersion());
+        assertEquals(2, installer.versionProbes.get());
+    }
+
+    private static final class CountingInstaller extends WebDriverInstaller {
+        private final String appPath;
+        final AtomicInteger pathProbes = new AtomicInteger();
+        final AtomicInteger versionProbes = new AtomicInteger();
+
+        CountingInstaller(String appPath) {
+            super("webdriver.test.driver", "Test Browser", "testdriver", "browser", appPath, "browser.exe");
+            this.appPath = appPath;
+        }
+
+        @Override
+        protected String getAppPath(String name) {
+            pathProbes.incrementAndGet();
+            return appPath;
+        }
+
+        @Override
+        protected String getAppVersion(String appPath) {
+            versionProbes.incrementAndGet();
+            return "Test Browser 88.0.4324.96";
+        }
+
+        @Override
+        String getSuitableDriverVersion(String browserVersion) {
+            return browserVersion;
+        }
+
+        @NotNull
+        @Override
+        String toFileName(String version, OS os) {
+            return "testdriver.zip";
+        }
+
+        @Override
+        String getChecksumConfig() {
+            return null;
+        }
+
+        @NotNull
+        @Override
+        String getDownloadURL(String version, String fileName) {
+            return "http://localhost/" + version + "/" + fileName;
+        }
+    }
+}
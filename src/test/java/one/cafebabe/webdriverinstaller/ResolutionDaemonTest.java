@@ -0,0 +1,270 @@
+package one.cafebabe.webdriverinstaller;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResolutionDaemonTest {
+    private final LocalHttpServer server = new LocalHttpServer();
+
+    ResolutionDaemonTest() throws IOException {
+    }
+
+    @AfterEach
+    void cleanUp() {
+        WebDriverInstaller.invalidateResolvedDrivers();
+        System.clearProperty(ResolutionDaemon.ENABLED_PROPERTY_NAME);
+        System.clearProperty(ResolutionDaemon.DIR_PROPERTY_NAME);
+        System.clearProperty("webdriver.test.driver");
+        server.close();
+    }
+
+    @Test
+    void resolvesOnBehalfOfOtherJvms(@TempDir Path dir) throws IOException {
+        server.put("/88.0.4324.96/testdriver.zip", WebDriverInstallerTest.zip("testdriver", "binary"));
+        final Path app = Files.write(dir.resolve("browser"), "binary".getBytes());
+        final Path daemonDir = dir.resolve("daemon");
+        final Path installRoot = dir.resolve("testdriver");
+        final ResolutionDaemon daemon = ResolutionDaemon.start(daemonDir,
+                driver -> driver.equals("testdriver") ? new InstallListenerTest.TestInstaller(app.toString(), server.url("/")) : null);
+        assertNotNull(daemon);
+        try {
+            // only one daemon per directory
+            assertNull(ResolutionDaemon.start(daemonDir, driver -> null));
+
+            final Optional<String> path = ResolutionDaemon.request(daemonDir, "testdriver", installRoot.toString());
+            assertNotNull(path);
+            assertEquals(installRoot.resolve("88.0.4324.96").resolve("testdriver").toAbsolutePath().toString(), path.orElse(null));
+            assertEquals(path, ResolutionDaemon.request(daemonDir, "testdriver", installRoot.toString()));
+            assertEquals(1, server.requests.size());
+
+            // unknown driver
+            assertNull(ResolutionDaemon.request(daemonDir, "operadriver", installRoot.toString()));
+        } finally {
+            daemon.stop();
+        }
+        assertFalse(Files.exists(daemonDir.resolve(ResolutionDaemon.FILE_NAME)));
+        assertNull(ResolutionDaemon.request(daemonDir, "testdriver", installRoot.toString()));
+    }
+
+    @Test
+    void foreignRequestLeavesHostUntouched(@TempDir Path dir) throws IOException {
+        server.put("/88.0.4324.96/testdriver.zip", WebDriverInstallerTest.zip("testdriver", "binary"));
+        final Path app = Files.write(dir.resolve("browser"), "binary".getBytes());
+        final Path installRoot = dir.resolve("testdriver");
+        // the driver the host JVM resolved for itself
+        System.setProperty("webdriver.test.driver", "/host/testdriver");
+        final List<InstallEvent> events = new CopyOnWriteArrayList<>();
+        final InstallListener listener = events::add;
+        WebDriverInstaller.addInstallListener(listener);
+        final ResolutionDaemon daemon = ResolutionDaemon.start(dir.resolve("daemon"), driver -> new InstallListenerTest.TestInstaller(app.toString(), server.url("/")));
+        assertNotNull(daemon);
+        try {
+            final Optional<String> path = ResolutionDaemon.request(dir.resolve("daemon"), "testdriver", installRoot.toString());
+            assertNotNull(path);
+            assertTrue(path.isPresent());
+            assertEquals("/host/testdriver", System.getProperty("webdriver.test.driver"));
+            assertTrue(events.isEmpty());
+        } finally {
+            daemon.stop();
+            WebDriverInstaller.removeInstallListener(listener);
+        }
+    }
+
+    @Test
+    void followsBrowserUpdates(@TempDir Path dir) throws IOException {
+        server.put("/88.0.4324.96/testdriver.zip", WebDriverInstallerTest.zip("testdriver", "88"));
+        server.put("/89.0.4389.23/testdriver.zip", WebDriverInstallerTest.zip("testdriver", "89"));
+        final Path app = Files.write(dir.resolve("browser"), "88".getBytes());
+        final AtomicReference<String> browserVersion = new AtomicReference<>("88.0.4324.96");
+        final Path installRoot = dir.resolve("testdriver");
+        final ResolutionDaemon daemon = ResolutionDaemon.start(dir.resolve("daemon"), driver -> new InstallListenerTest.TestInstaller(app.toString(), server.url("/")) {
+            @Override
+            protected String getAppVersion(String appPath) {
+                return "Test Browser " + browserVersion.get();
+            }
+        });
+        assertNotNull(daemon);
+        try {
+            assertEquals(Optional.of(installRoot.resolve("88.0.4324.96").resolve("testdriver").toAbsolutePath().toString()),
+                    ResolutionDaemon.request(dir.resolve("daemon"), "testdriver", installRoot.toString()));
+
+            // auto-updated while the daemon is running
+            browserVersion.set("89.0.4389.23");
+            Files.write(app, "89.0".getBytes());
+            assertEquals(Optional.of(installRoot.resolve("89.0.4389.23").resolve("testdriver").toAbsolutePath().toString()),
+                    ResolutionDaemon.request(dir.resolve("daemon"), "testdriver", installRoot.toString()));
+        } finally {
+            daemon.stop();
+        }
+    }
+
+    @Test
+    void ensureInstalledSetsSystemPropertyFromDaemon(@TempDir Path dir) throws IOException {
+        final Path installRoot = dir.resolve("testdriver");
+        final Path binary = Files.createDirectories(installRoot.resolve("88.0.4324.96")).resolve("testdriver");
+        Files.write(binary, "binary".getBytes());
+        final HttpServer fake = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        fake.createContext("/ensure", exchange -> {
+            final byte[] body = binary.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        fake.start();
+        try {
+            // daemon running in another JVM
+            final Properties p = new Properties();
+            p.setProperty("port", String.valueOf(fake.getAddress().getPort()));
+            p.setProperty("token", "token");
+            WebDriverInstaller.storeProperties(p, dir.resolve(ResolutionDaemon.FILE_NAME), "fake");
+            System.setProperty(ResolutionDaemon.ENABLED_PROPERTY_NAME, "true");
+            System.setProperty(ResolutionDaemon.DIR_PROPERTY_NAME, dir.toString());
+
+            final List<InstallEvent> events = new CopyOnWriteArrayList<>();
+            final InstallListener listener = events::add;
+            WebDriverInstaller.addInstallListener(listener);
+            try {
+                final Path app = Files.write(dir.resolve("browser"), "binary".getBytes());
+                final Optional<String> path = ResolutionDaemon.ensureInstalled(new InstallListenerTest.TestInstaller(app.toString(), server.url("/")), installRoot.toString());
+                assertEquals(Optional.of(binary.toAbsolutePath().toString()), path);
+                assertEquals(binary.toAbsolutePath().toString(), System.getProperty("webdriver.test.driver"));
+                // not installed in-process
+                assertEquals(0, server.requests.size());
+                // listeners of the requesting JVM are notified
+                assertEquals(1, events.size());
+                assertEquals(InstallEvent.Phase.INSTALL, events.get(0).getPhase());
+                assertEquals("88.0.4324.96", events.get(0).getVersion());
+                assertTrue(events.get(0).isSuccess());
+            } finally {
+                WebDriverInstaller.removeInstallListener(listener);
+            }
+        } finally {
+            fake.stop(0);
+        }
+    }
+
+    @Test
+    void ensureInstalledFallsBackInProcess(@TempDir Path dir) throws IOException {
+        server.put("/88.0.4324.96/testdriver.zip", WebDriverInstallerTest.zip("testdriver", "binary"));
+        System.setProperty(ResolutionDaemon.ENABLED_PROPERTY_NAME, "true");
+        System.setProperty(ResolutionDaemon.DIR_PROPERTY_NAME, dir.toString());
+        final Path app = Files.write(dir.resolve("browser"), "binary".getBytes());
+        final Path installRoot = dir.resolve("testdriver");
+        // another JVM holds the lock, but hasn't published its port yet
+        try (InstallLock ignored = InstallLock.acquire(dir.resolve(ResolutionDaemon.LOCK_FILE_NAME))) {
+            final Optional<String> path = ResolutionDaemon.ensureInstalled(new InstallListenerTest.TestInstaller(app.toString(), server.url("/")), installRoot.toString());
+            assertEquals(Optional.of(installRoot.resolve("88.0.4324.96").resolve("testdriver").toAbsolutePath().toString()), path);
+            assertEquals(path.get(), System.getProperty("webdriver.test.driver"));
+            assertEquals(1, server.requests.size());
+        }
+    }
+
+    @Test
+    void emptyWhenDaemonFailsToInstall(@TempDir Path dir) throws IOException {
+        final Path app = Files.write(dir.resolve("browser"), "binary".getBytes());
+        final ResolutionDaemon daemon = ResolutionDaemon.start(dir, driver -> new InstallListenerTest.TestInstaller(app.toString(), server.url("/")));
+        assertNotNull(daemon);
+        try {
+            assertEquals(Optional.empty(), ResolutionDaemon.request(dir, "testdriver", dir.resolve("testdriver").toString()));
+        } finally {
+            daemon.stop();
+        }
+    }
+
+    @Test
+    void rejectsRequestsWithoutToken(@TempDir Path dir) throws IOException {
+        final ResolutionDaemon daemon = ResolutionDaemon.start(dir, driver -> {
+            throw new AssertionError("must not be called");
+        });
+        assertNotNull(daemon);
+        try {
+            final Path file = dir.resolve(ResolutionDaemon.FILE_NAME);
+            final Properties p = new Properties();
+            try (InputStream is = Files.newInputStream(file)) {
+                p.load(is);
+            }
+            assertEquals(64, p.getProperty("token").length());
+            p.setProperty("token", "guess");
+            WebDriverInstaller.storeProperties(p, file, "tampered");
+            assertNull(ResolutionDaemon.request(dir, "testdriver", dir.toString()));
+        } finally {
+            daemon.stop();
+        }
+    }
+
+    @Test
+    void ignoresDirectoryWritableByOthers(@TempDir Path dir) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        final Path daemonDir = dir.resolve("daemon");
+        final ResolutionDaemon daemon = ResolutionDaemon.start(daemonDir, driver -> {
+            throw new AssertionError("must not be called");
+        });
+        assertNotNull(daemon);
+        try {
+            assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(daemonDir));
+            // another user could replace the port file
+            Files.setPosixFilePermissions(daemonDir, PosixFilePermissions.fromString("rwxrwxrwx"));
+            assertNull(ResolutionDaemon.request(daemonDir, "testdriver", dir.toString()));
+        } finally {
+            daemon.stop();
+        }
+        assertThrows(IOException.class, () -> ResolutionDaemon.start(daemonDir, driver -> null));
+    }
+
+    @Test
+    void rejectsPathOutsideInstallRoot(@TempDir Path dir) throws IOException {
+        final Path elsewhere = Files.write(dir.resolve("elsewhere"), "binary".getBytes());
+        final HttpServer fake = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        fake.createContext("/ensure", exchange -> {
+            final byte[] body = elsewhere.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        fake.start();
+        try {
+            final Properties p = new Properties();
+            p.setProperty("port", String.valueOf(fake.getAddress().getPort()));
+            p.setProperty("token", "token");
+            WebDriverInstaller.storeProperties(p, dir.resolve(ResolutionDaemon.FILE_NAME), "fake");
+            assertNull(ResolutionDaemon.request(dir, "testdriver", dir.resolve("testdriver").toString()));
+        } finally {
+            fake.stop(0);
+        }
+    }
+
+    @Test
+    void noDaemonAfterItExited(@TempDir Path dir) throws IOException {
+        assertNull(ResolutionDaemon.request(dir, "chromedriver", dir.toString()));
+        // port file left by a daemon which was killed
+        final Properties p = new Properties();
+        p.setProperty("port", "1");
+        p.setProperty("token", "stale");
+        WebDriverInstaller.storeProperties(p, dir.resolve(ResolutionDaemon.FILE_NAME), "stale");
+        assertNull(ResolutionDaemon.request(dir, "chromedriver", dir.toString()));
+    }
+}
@@ -0,0 +1,162 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+    private final LocalHttpServer server = new LocalHttpServer();
+
+    RetryPolicyTest() throws IOException {
+    }
+
+    @AfterEach
+    void cleanUp() {
+        System.clearProperty(RetryPolicy.RETRIES_PROPERTY_NAME);
+        System.clearProperty(RetryPolicy.BACKOFF_PROPERTY_NAME);
+        server.close();
+    }
+
+    @Test
+    void retriesTransientFailures(@TempDir Path dir) throws IOException {
+        server.put("/driver.zip", "driver".getBytes());
+        server.failures.set(2);
+        final Path target = dir.resolve("driver.zip");
+        new RetryPolicy(2, 1, 0).execute("download", () -> Downloader.download(server.url("/driver.zip"), target));
+        assertArrayEquals("driver".getBytes(), Files.readAllBytes(target));
+        assertEquals(3, server.requests.size());
+    }
+
+    @Test
+    void givesUpAfterRetries(@TempDir Path dir) {
+        server.put("/driver.zip", "driver".getBytes());
+        server.failures.set(10);
+        final HttpStatusException e = assertThrows(HttpStatusException.class,
+                () -> new RetryPolicy(2, 1, 0).execute("download", () -> Downloader.download(server.url("/driver.zip"), dir.resolve("driver.zip"))));
+        assertEquals(503, e.getStatusCode());
+        assertEquals(3, server.requests.size());
+    }
+
+    @Test
+    void clientErrorsAreNotRetried(@TempDir Path dir) {
+        final HttpStatusException e = assertThrows(HttpStatusException.class,
+                () -> new RetryPolicy(2, 1, 0).execute("download", () -> Downloader.download(server.url("/driver.zip"), dir.resolve("driver.zip"))));
+        assertEquals(404, e.getStatusCode());
+        assertEquals(1, server.requests.size());
+    }
+
+    @Test
+    void retryResumesCutOffDownload(@TempDir Path dir) throws IOException {
+        final byte[] content = new byte[1024 * 1024];
+        new Random(1).nextBytes(content);
+        server.put("/driver.zip", content);
+        server.cutOffAfter = 300_000;
+        final Path target = dir.resolve("driver.zip");
+        new RetryPolicy(2, 1, 0).execute("download", () -> Downloader.download(server.url("/driver.zip"), target));
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(2, server.requests.size());
+        assertEquals("/driver.zip bytes=300000-", server.requests.get(1));
+    }
+
+    @Test
+    void localFailuresAreNotRetried() {
+        final AtomicInteger attempts = new AtomicInteger();
+        assertThrows(AccessDeniedException.class, () -> new RetryPolicy(2, 1, 0).execute("download", () -> {
+            attempts.incrementAndGet();
+            throw new AccessDeniedException("/opt/chromedriver");
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void isRetryable() {
+        assertTrue(RetryPolicy.isRetryable(new ConnectException("Connection refused")));
+        assertTrue(RetryPolicy.isRetryable(new SocketTimeoutException("Read timed out")));
+        assertTrue(RetryPolicy.isRetryable(new UnknownHostException("example.invalid")));
+        assertTrue(RetryPolicy.isRetryable(new EOFException("Incomplete download")));
+        assertTrue(RetryPolicy.isRetryable(new HttpStatusException("http://localhost/", 503)));
+        assertTrue(RetryPolicy.isRetryable(new HttpStatusException("http://localhost/", 429)));
+        assertFalse(RetryPolicy.isRetryable(new HttpStatusException("http://localhost/", 404)));
+        assertFalse(RetryPolicy.isRetryable(new AccessDeniedException("/opt/chromedriver")));
+        assertFalse(RetryPolicy.isRetryable(new IOException("No space left on device")));
+        assertFalse(RetryPolicy.isRetryable(new IOException("URL[http://localhost/] returns unexpected Content-Range [bytes 0-1/2].")));
+    }
+
+    @Test
+    void backoff() {
+        final RetryPolicy policy = new RetryPolicy(10, 100, 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.backoff(0) <= 100);
+            assertTrue(policy.backoff(3) <= 800);
+            assertTrue(policy.backoff(30) <= 30_000);
+        }
+    }
+
+    @Test
+    void hedgedRequestOvertakesStalledOne() throws IOException {
+        server.put("/listing", "listing".getBytes());
+        server.stallFor = 5_000;
+        final long start = System.nanoTime();
+        try (Http.Response response = new RetryPolicy(0, 1, 100).hedge(() -> Http.get(server.url("/listing"), Collections.emptyMap()))) {
+            assertEquals(200, response.code());
+        }
+        assertTrue(System.nanoTime() - start < 4_000_000_000L);
+        assertEquals(2, server.requests.size());
+    }
+
+    @Test
+    void notHedgedWhenResponseIsTimely() throws IOException {
+        server.put("/listing", "listing".getBytes());
+        try (Http.Response response = new RetryPolicy(0, 1, 5_000).hedge(() -> Http.get(server.url("/listing"), Collections.emptyMap()))) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(1, server.requests.size());
+    }
+
+    @Test
+    void installRetriesTransientFailures(@TempDir Path installRoot) throws IOException {
+        System.setProperty(RetryPolicy.BACKOFF_PROPERTY_NAME, "1");
+        server.put("/88.0.4324.96/testdriver.zip", WebDriverInstallerTest.zip("testdriver", "binary", "testdriver.exe", "binary"));
+        server.failures.set(1);
+        final Path app = Files.write(installRoot.resolve("browser"), "binary".getBytes());
+        final Optional<String> path = new InstallListenerTest.TestInstaller(app.toString(), server.url("/")).ensureInstalled(installRoot.toString());
+        assertTrue(path.isPresent());
+        assertTrue(Files.exists(installRoot.resolve(path.get())));
+    }
+
+    @Test
+    void failedInstallReturnsEmpty(@TempDir Path installRoot) throws IOException {
+        System.setProperty(RetryPolicy.RETRIES_PROPERTY_NAME, "1");
+        System.setProperty(RetryPolicy.BACKOFF_PROPERTY_NAME, "1");
+        server.failures.set(10);
+        final Path app = Files.write(installRoot.resolve("browser"), "binary".getBytes());
+        assertFalse(new InstallListenerTest.TestInstaller(app.toString(), server.url("/")).ensureInstalled(installRoot.toString()).isPresent());
+        assertEquals(2, server.requests.size());
+    }
+
+    @Test
+    void invalidSettingFallsBackToDefault(@TempDir Path installRoot) throws IOException {
+        System.setProperty(RetryPolicy.RETRIES_PROPERTY_NAME, "1");
+        System.setProperty(RetryPolicy.BACKOFF_PROPERTY_NAME, "1ms");
+        server.put("/88.0.4324.96/testdriver.zip", WebDriverInstallerTest.zip("testdriver", "binary", "testdriver.exe", "binary"));
+        server.failures.set(1);
+        final Path app = Files.write(installRoot.resolve("browser"), "binary".getBytes());
+        assertTrue(new InstallListenerTest.TestInstaller(app.toString(), server.url("/")).ensureInstalled(installRoot.toString()).isPresent());
+        assertEquals(2, server.requests.size());
+    }
+}
@@ -0,0 +1,271 @@
+package one.cafebabe.webdriverinstaller;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebDriverInstallerTest {
+    private final LocalHttpServer server = new LocalHttpServer();
+
+    WebDriverInstallerTest() throws IOException {
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    static byte[] zip(String... namesAndContents) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zos.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zos.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    static byte[] tar(String name, String content, int mode) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tos = new TarArchiveOutputStream(baos)) {
+            final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            final TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(bytes.length);
+            entry.setMode(mode);
+            tos.putArchiveEntry(entry);
+            tos.write(bytes);
+            tos.closeArchiveEntry();
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    void decompressTar(@TempDir Path dir) throws IOException {
+        final byte[] tar = tar("geckodriver", "binary", 0755);
+        final Path gz = dir.resolve("geckodriver-v0.29.0-linux64.tar.gz");
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            os.write(tar);
+        }
+        final Path bz2 = dir.resolve("geckodriver-v0.29.0-linux64.tar.bz2");
+        try (OutputStream os = new BZip2CompressorOutputStream(Files.newOutputStream(bz2))) {
+            os.write(tar);
+        }
+        for (Path archive : new Path[]{gz, bz2}) {
+            final Path root = dir.resolve(archive.getFileName() + ".out");
+            WebDriverInstaller.decompress(archive, root);
+            assertEquals("binary", new String(Files.readAllBytes(root.resolve("geckodriver")), StandardCharsets.UTF_8));
+            assertTrue(Files.isExecutable(root.resolve("geckodriver")));
+            final Path selected = dir.resolve(archive.getFileName() + ".selected");
+            WebDriverInstaller.decompress(archive, selected, "geckodriver");
+            assertTrue(Files.isExecutable(selected.resolve("geckodriver")));
+        }
+    }
+
+    @Test
+    void binaryOnlyPicksShallowestMatchInZipAndTar(@TempDir Path dir) throws IOException {
+        final Path zip = Files.write(dir.resolve("geckodriver.zip"), zip("foo/geckodriver", "nested", "geckodriver", "top", "bar/baz/geckodriver", "deeper"));
+        final Path gz = dir.resolve("geckodriver.tar.gz");
+        try (TarArchiveOutputStream tos = new TarArchiveOutputStream(new GZIPOutputStream(Files.newOutputStream(gz)))) {
+            for (String[] nameAndContent : new String[][]{{"foo/geckodriver", "nested"}, {"geckodriver", "top"}, {"bar/baz/geckodriver", "deeper"}}) {
+                final byte[] bytes = nameAndContent[1].getBytes(StandardCharsets.UTF_8);
+                final TarArchiveEntry entry = new TarArchiveEntry(nameAndContent[0]);
+                entry.setSize(bytes.length);
+                entry.setMode(0755);
+                tos.putArchiveEntry(entry);
+                tos.write(bytes);
+                tos.closeArchiveEntry();
+            }
+        }
+        for (Path archive : new Path[]{zip, gz}) {
+            final Path root = dir.resolve(archive.getFileName() + ".out");
+            WebDriverInstaller.decompress(archive, root, "geckodriver");
+            assertEquals("top", new String(Files.readAllBytes(root.resolve("geckodriver")), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void decompressTarRejectsEntriesOutsideRoot(@TempDir Path dir) throws IOException {
+        final Path gz = dir.resolve("evil.tar.gz");
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            os.write(tar("../evil", "evil", 0644));
+        }
+        assertThrows(IOException.class, () -> WebDriverInstaller.decompress(gz, dir.resolve("out")));
+        assertFalse(Files.exists(dir.resolve("evil")));
+    }
+
+    @Test
+    void decompressZipExtractsOnlyBinary(@TempDir Path dir) throws IOException {
+        final Path zip = dir.resolve("chromedriver-linux64.zip");
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(Files.newOutputStream(zip))) {
+            for (String[] nameAndContent : new String[][]{{"chromedriver-linux64/LICENSE.chromedriver", "license"},
+                    {"chromedriver-linux64/THIRD_PARTY_NOTICES.chromedriver", "notices"}, {"chromedriver-linux64/chromedriver", "binary"}}) {
+                final ZipArchiveEntry entry = new ZipArchiveEntry(nameAndContent[0]);
+                entry.setUnixMode(nameAndContent[1].equals("binary") ? 0750 : 0644);
+                zos.putArchiveEntry(entry);
+                zos.write(nameAndContent[1].getBytes(StandardCharsets.UTF_8));
+                zos.closeArchiveEntry();
+            }
+        }
+        final Path root = dir.resolve("out");
+        WebDriverInstaller.decompress(zip, root, "chromedriver");
+        // flattened
+        assertEquals("binary", new String(Files.readAllBytes(root.resolve("chromedriver")), StandardCharsets.UTF_8));
+        assertTrue(Files.isExecutable(root.resolve("chromedriver")));
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertEquals(PosixFilePermissions.fromString("rwxr-x---"), Files.getPosixFilePermissions(root.resolve("chromedriver")));
+        }
+        try (Stream<Path> files = Files.list(root)) {
+            assertEquals(1, files.count());
+        }
+
+        assertThrows(IOException.class, () -> WebDriverInstaller.decompress(zip, dir.resolve("missing"), "geckodriver"));
+        assertThrows(IllegalArgumentException.class, () -> WebDriverInstaller.decompress(zip, dir.resolve("evil"), "../chromedriver"));
+    }
+
+    @Test
+    void decompressZipWithoutModeMakesBinaryExecutable(@TempDir Path dir) throws IOException {
+        // java.util.zip writes no unix mode, like archives created on Windows
+        final Path zip = Files.write(dir.resolve("chromedriver_linux64.zip"), zip("chromedriver", "binary", "LICENSE", "license"));
+        WebDriverInstaller.decompress(zip, dir.resolve("out"), "chromedriver");
+        assertTrue(Files.isExecutable(dir.resolve("out").resolve("chromedriver")));
+        assertFalse(Files.exists(dir.resolve("out").resolve("LICENSE")));
+    }
+
+    @Test
+    void decompressZipRejectsEntriesOutsideRoot(@TempDir Path dir) throws IOException {
+        final Path zip = Files.write(dir.resolve("evil.zip"), zip("../evil", "evil"));
+        assertThrows(IOException.class, () -> WebDriverInstaller.decompress(zip, dir.resolve("out")));
+        assertFalse(Files.exists(dir.resolve("evil")));
+        // extracted under the root by its file name only
+        WebDriverInstaller.decompress(zip, dir.resolve("out"), "evil");
+        assertTrue(Files.exists(dir.resolve("out").resolve("evil")));
+        assertFalse(Files.exists(dir.resolve("evil")));
+    }
+
+    @Test
+    void stagedInstall(@TempDir Path installRoot) throws IOException {
+        server.put("/88.0.4324.96/chromedriver_linux64.zip", zip("chromedriver", "binary", "LICENSE", "license"));
+        final Path installRootPath = installRoot.resolve("88.0.4324.96");
+        // leftovers of a crashed run
+        Files.createDirectories(installRoot.resolve("88.0.4324.96.tmp"));
+        Files.write(installRoot.resolve("88.0.4324.96.tmp").resolve("chromedriver"), "half written".getBytes());
+        Files.createDirectories(installRootPath);
+        Files.write(installRootPath.resolve("chromedriver_linux64.zip"), "partial".getBytes());
+
+        final Path bin = installRootPath.resolve("chromedriver");
+        WebDriverInstaller.download(server.url("/88.0.4324.96/chromedriver_linux64.zip"), installRootPath.resolve("chromedriver_linux64.zip"), installRootPath, bin, null);
+
+        assertEquals("binary", new String(Files.readAllBytes(bin), StandardCharsets.UTF_8));
+        assertTrue(Files.isExecutable(bin));
+        assertFalse(Files.exists(installRootPath.resolve("LICENSE")));
+        assertFalse(Files.exists(installRoot.resolve("88.0.4324.96.tmp")));
+        final String sha256 = Downloader.toHex(Downloader.sha256().digest(Files.readAllBytes(installRootPath.resolve("chromedriver_linux64.zip"))));
+        assertEquals(sha256 + "  chromedriver_linux64.zip\n",
+                new String(Files.readAllBytes(installRootPath.resolve("chromedriver_linux64.zip.sha256")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void reinstallsWhenChecksumChanges(@TempDir Path installRoot) throws IOException {
+        final byte[] republished = zip("testdriver", "republished");
+        server.put("/88.0.4324.96/testdriver.zip", zip("testdriver", "original"));
+        final Path app = Files.write(installRoot.resolve("browser"), "binary".getBytes());
+        final String[] checksum = {null};
+        final Supplier<WebDriverInstaller> installer = () -> new InstallListenerTest.TestInstaller(app.toString(), server.url("/")) {
+            @Override
+            String getChecksumConfig() {
+                return checksum[0];
+            }
+        };
+        final Path bin = Paths.get(installer.get().ensureInstalled(installRoot.toString()).orElseThrow(AssertionError::new));
+        assertEquals("original", new String(Files.readAllBytes(bin), StandardCharsets.UTF_8));
+
+        // the expected digest is pinned to an archive republished after the install
+        server.put("/88.0.4324.96/testdriver.zip", republished);
+        checksum[0] = Downloader.toHex(Downloader.sha256().digest(republished));
+        assertEquals(Optional.of(bin.toString()), installer.get().ensureInstalled(installRoot.toString()));
+        assertEquals("republished", new String(Files.readAllBytes(bin), StandardCharsets.UTF_8));
+        assertEquals(2, server.requests.size());
+
+        // verified with the sidecar on warm starts, without downloading again
+        assertEquals(Optional.of(bin.toString()), installer.get().ensureInstalled(installRoot.toString()));
+        assertEquals(2, server.requests.size());
+    }
+
+    @Test
+    void checksumMismatch(@TempDir Path installRoot) throws IOException {
+        server.put("/88.0.4324.96/chromedriver_linux64.zip", zip("chromedriver", "binary"));
+        final Path installRootPath = installRoot.resolve("88.0.4324.96");
+        final String wrong = "0000000000000000000000000000000000000000000000000000000000000000";
+        assertThrows(IOException.class, () -> WebDriverInstaller.download(server.url("/88.0.4324.96/chromedriver_linux64.zip"),
+                installRootPath.resolve("chromedriver_linux64.zip"), installRootPath, installRootPath.resolve("chromedriver"), wrong));
+        assertFalse(Files.exists(installRootPath));
+        assertFalse(Files.exists(installRoot.resolve("88.0.4324.96.tmp").resolve("chromedriver")));
+    }
+
+    @Test
+    void resolveExpectedSha256(@TempDir Path dir) throws IOException {
+        final String digest1 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+        final String digest2 = "a3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+        assertNull(WebDriverInstaller.resolveExpectedSha256(null, "v0.29.0", "geckodriver-v0.29.0-linux64.tar.gz"));
+        assertEquals(digest1, WebDriverInstaller.resolveExpectedSha256(digest1, "v0.29.0", "geckodriver-v0.29.0-linux64.tar.gz"));
+
+        final Path sums = dir.resolve("v0.29.0.sha256sum");
+        Files.write(sums, (digest2 + "  geckodriver-v0.29.0-macos.tar.gz\n" + digest1 + " *geckodriver-v0.29.0-linux64.tar.gz\n").getBytes(StandardCharsets.UTF_8));
+        final String url = dir.toUri() + "{version}.sha256sum";
+        assertEquals(digest1, WebDriverInstaller.resolveExpectedSha256(url, "v0.29.0", "geckodriver-v0.29.0-linux64.tar.gz"));
+        assertEquals(digest2, WebDriverInstaller.resolveExpectedSha256(url, "v0.29.0", "geckodriver-v0.29.0-macos.tar.gz"));
+        assertThrows(IOException.class, () -> WebDriverInstaller.resolveExpectedSha256(url, "v0.29.0", "geckodriver-v0.29.0-win64.zip"));
+        assertThrows(IOException.class, () -> WebDriverInstaller.resolveExpectedSha256(url, "v0.30.0", "geckodriver-v0.30.0-win64.zip"));
+    }
+
+    @Test
+    void nothingPublishedWithoutBinary(@TempDir Path installRoot) throws IOException {
+        server.put("/88.0.4324.96/chromedriver_linux64.zip", zip("LICENSE", "license"));
+        final Path installRootPath = installRoot.resolve("88.0.4324.96");
+        assertThrows(IOException.class, () -> WebDriverInstaller.download(server.url("/88.0.4324.96/chromedriver_linux64.zip"),
+                installRootPath.resolve("chromedriver_linux64.zip"), installRootPath, installRootPath.resolve("chromedriver"), null));
+        assertFalse(Files.exists(installRootPath));
+    }
+
+    @Test
+    void executeTimesOut(@TempDir Path dir) throws IOException, InterruptedException {
+        if (System.getProperty("os.name").toLowerCase().contains("win")) {
+            return;
+        }
+        assertEquals("hello", WebDriverInstaller.execute(dir.toFile(), new String[]{"/bin/sh", "-c", "echo hello"}));
+        System.setProperty(WebDriverInstaller.PROCESS_TIMEOUT_PROPERTY_NAME, "1");
+        try {
+            final long start = System.currentTimeMillis();
+            // the grandchild keeps the pipe open
+            assertThrows(IOException.class, () -> WebDriverInstaller.execute(dir.toFile(), new String[]{"/bin/sh", "-c", "sleep 30 | cat"}));
+            assertTrue(System.currentTimeMillis() - start < 10_000);
+        } finally {
+            System.clearProperty(WebDriverInstaller.PROCESS_TIMEOUT_PROPERTY_NAME);
+        }
+    }
+}